@@ -2,8 +2,6 @@ package org.jsizzle.example.airline;
 
 import static com.google.common.collect.Iterables.all;
 import static com.google.common.collect.Iterables.concat;
-import static com.google.common.collect.Iterables.filter;
-import static com.google.common.collect.Iterables.size;
 import static com.google.common.collect.Sets.union;
 import static java.util.Collections.singleton;
 
@@ -12,10 +10,13 @@ import java.util.Set;
 
 import org.jsizzle.Disjoint;
 import org.jsizzle.Include;
+import org.jsizzle.Index;
 import org.jsizzle.Invariant;
 import org.jsizzle.Schema;
 
 import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.Multiset;
 
 @Schema
 class AirlineSpec
@@ -71,19 +72,18 @@ class AirlineSpec
         });
     }
     
+    @Index Multiset<FlightId> bookingCounts()
+    {
+        return ImmutableMultiset.copyOf(concat(bookings.values()));
+    }
+    
     @Invariant boolean allFlightsDoNotExceedCapacity()
     {
         return all(flights.keySet(), new Predicate<FlightId>()
         {
-            public boolean apply(final FlightId flightId)
+            public boolean apply(FlightId flightId)
             {
-                return size(filter(bookings.keySet(), new Predicate<Customer>()
-                {
-                    public boolean apply(Customer customer)
-                    {
-                        return bookings.get(customer).contains(flightId);
-                    }
-                })) <= flights.get(flightId).capacity;
+                return bookingCounts().count(flightId) <= flights.get(flightId).capacity;
             }
         });
     }
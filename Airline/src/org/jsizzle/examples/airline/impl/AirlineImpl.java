@@ -13,15 +13,26 @@ import java.util.Map;
 import java.util.Set;
 
 import org.jcurry.AsFunction;
+import org.jsizzle.SnapshotChain;
 import org.jsizzle.example.airline.AirlineSpec;
 import org.jsizzle.examples.airline.Airline;
 
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import com.google.common.base.Supplier;
 
 public class AirlineImpl implements Airline
 {
     private final List<Flight> flights = new ArrayList<Flight>();
+    
+    private final SnapshotChain<AirlineSpec> snapshots = new SnapshotChain<AirlineSpec>(new Supplier<AirlineSpec>()
+    {
+        @Override
+        public AirlineSpec get()
+        {
+            return specAirline();
+        }
+    });
 
     private static class Flight
     {
@@ -41,6 +52,7 @@ public class AirlineImpl implements Airline
     public int addFlight(String from, String to, int capacity)
     {
         flights.add(new Flight(from, to, capacity));
+        snapshots.mutated();
         return flights.size() - 1;
     }
 
@@ -59,15 +71,15 @@ public class AirlineImpl implements Airline
     
     final AirlineSpec.AddFlight specAddFlight(String from, String to, int capacity)
     {
-        return new AirlineSpec.AddFlight(specAirline(),
+        return new AirlineSpec.AddFlight(snapshots.snapshot(),
                                          new AirlineSpec.FlightId(addFlight(from, to, capacity)),
                                          specFlight(new Flight(from, to, capacity)),
-                                         specAirline());
+                                         snapshots.snapshot());
     }
     
     final AirlineSpec.HasRoute specHasRoute(String from, String to)
     {
-        return new AirlineSpec.HasRoute(specAirline(), specRoute(from, to), hasRoute(from, to));
+        return new AirlineSpec.HasRoute(snapshots.snapshot(), specRoute(from, to), hasRoute(from, to));
     }
 
     final AirlineSpec specAirline()
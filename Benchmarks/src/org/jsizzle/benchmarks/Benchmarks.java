@@ -0,0 +1,29 @@
+package org.jsizzle.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks, with the GC profiler to report allocation rates.
+ * Command line arguments are as for the JMH runner, for example
+ * <code>-p size=10,1000 BindingBenchmark</code> to select state sizes and
+ * benchmarks.
+ */
+public class Benchmarks
+{
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException
+    {
+        final CommandLineOptions commandLine = new CommandLineOptions(args);
+        final ChainedOptionsBuilder options = new OptionsBuilder()
+            .parent(commandLine)
+            .addProfiler(GCProfiler.class);
+        if (commandLine.getIncludes().isEmpty())
+            options.include("org\\.jsizzle\\..*Benchmark");
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,87 @@
+package org.jsizzle.benchmarks;
+
+import static org.jsizzle.benchmarks.Entities.entities;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.jsizzle.Invariable;
+import org.jsizzle.Invariables;
+import org.jsizzle.benchmarks.Entities.Entity;
+import org.jsizzle.benchmarks.Entities.Registry;
+import org.jsizzle.benchmarks.Entities.Renaming;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Construction and checking of a binding holding a set of entity bindings.
+ * Bindings memoize their verdicts, so checks are measured on a fresh
+ * registry over already checked entities, which is how snapshots of an
+ * implementation usually share unchanged state.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BindingBenchmark
+{
+    @Param({"10", "1000", "100000", "1000000"})
+    public int size;
+    
+    private Set<Entity> entities;
+    private List<Entity> entityList;
+    private Set<Entity> violatingEntities;
+    
+    @Setup
+    public void setUp()
+    {
+        entities = entities(0, size);
+        entityList = ImmutableList.copyOf(entities);
+        violatingEntities = entities(-1, size);
+        new Registry("registry", entities).invariant();
+        new Registry("registry", violatingEntities).invariant();
+    }
+    
+    @Benchmark
+    public Registry construct()
+    {
+        return new Registry("registry", entities(0, size));
+    }
+    
+    @Benchmark
+    public boolean invariant()
+    {
+        return new Registry("registry", entities).invariant();
+    }
+    
+    @Benchmark
+    public Object getViolations()
+    {
+        return ImmutableList.copyOf(new Registry("registry", violatingEntities).getViolations());
+    }
+    
+    /**
+     * Equality of fresh bindings including another, so that hash codes are
+     * computed as well as members compared.
+     */
+    @Benchmark
+    public boolean equalsIncluding()
+    {
+        return new Renaming(size, "entity", "renamed").equals(new Renaming(size, "entity", "renamed"));
+    }
+    
+    @Benchmark
+    public boolean asInvariable()
+    {
+        final Invariable invariable = Invariables.asInvariable(entityList);
+        return invariable != null && invariable.invariant();
+    }
+}
@@ -0,0 +1,55 @@
+package org.jsizzle.benchmarks;
+
+import static org.jsizzle.benchmarks.Entities.entities;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.jsizzle.Delta;
+import org.jsizzle.benchmarks.Entities.Entity;
+import org.jsizzle.benchmarks.Entities.Registry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Frame conditions over a registry whose entities are equal, but not the
+ * same set, before and after, and matching of entity deltas by id.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DeltaBenchmark
+{
+    @Param({"10", "1000", "100000", "1000000"})
+    public int size;
+    
+    private Delta<Registry> delta;
+    private Set<Entity> befores;
+    private Set<Entity> afters;
+    
+    @Setup
+    public void setUp()
+    {
+        befores = entities(0, size);
+        afters = entities(size / 2, size);
+        delta = new Delta<Registry>(new Registry("before", befores), new Registry("after", entities(0, size)));
+    }
+    
+    @Benchmark
+    public boolean unchangedExcept()
+    {
+        return delta.unchangedExcept(Registry.getName);
+    }
+    
+    @Benchmark
+    public int deltas()
+    {
+        return Delta.deltas(befores, afters, Entity.getId).size();
+    }
+}
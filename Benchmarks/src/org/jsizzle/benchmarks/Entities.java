@@ -0,0 +1,139 @@
+package org.jsizzle.benchmarks;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.jcurry.AsFunction;
+import org.jsizzle.Binding;
+import org.jsizzle.BindingClass;
+import org.jsizzle.Binding.Inclusion;
+
+/**
+ * Hand-built bindings shaped like generated schema classes: a registry
+ * binding holding a set of entity bindings, each with one invariant, and an
+ * operation including an entity.
+ */
+public class Entities
+{
+    public static final class Entity extends Binding<Entity>
+    {
+        @AsFunction
+        public final int id;
+        @AsFunction
+        public final String name;
+        
+        private static final BindingClass<Entity> bindingClass = BindingClass.of(Entity.class)
+            .add("id", getId, Inclusion.DIRECT, false)
+            .add("name", getName, Inclusion.DIRECT, false)
+            .invariants("idNotNegative");
+        
+        public Entity(int id, String name)
+        {
+            super(bindingClass);
+            this.id = id;
+            this.name = name;
+            if (!(id >= 0))
+                addViolation("idNotNegative");
+        }
+        
+        @Override
+        public boolean equals(Object other)
+        {
+            return bindingEquals(other);
+        }
+        
+        @Override
+        public int hashCode()
+        {
+            return bindingHashCode();
+        }
+    }
+    
+    public static final class Registry extends Binding<Registry>
+    {
+        @AsFunction
+        public final String name;
+        @AsFunction
+        public final Set<Entity> entities;
+        
+        private static final BindingClass<Registry> bindingClass = BindingClass.of(Registry.class)
+            .add("name", getName, Inclusion.DIRECT, false)
+            .add("entities", getEntities, Inclusion.DIRECT, true)
+            .invariants();
+        
+        public Registry(String name, Set<Entity> entities)
+        {
+            super(bindingClass);
+            this.name = name;
+            this.entities = entities;
+        }
+        
+        @Override
+        public boolean equals(Object other)
+        {
+            return bindingEquals(other);
+        }
+        
+        @Override
+        public int hashCode()
+        {
+            return bindingHashCode();
+        }
+    }
+    
+    /**
+     * An operation schema including an entity, whose members are expanded
+     * into it.
+     */
+    public static final class Renaming extends Binding<Renaming>
+    {
+        @AsFunction
+        public final int id;
+        @AsFunction
+        public final String name;
+        @AsFunction
+        public final Entity entity;
+        @AsFunction
+        public final String newName;
+        
+        private static final BindingClass<Renaming> bindingClass = BindingClass.of(Renaming.class)
+            .add("id", getId, Inclusion.EXPANDED, false)
+            .add("name", getName, Inclusion.EXPANDED, false)
+            .add("entity", getEntity, Inclusion.INCLUDED, true)
+            .add("newName", getNewName, Inclusion.DIRECT, false)
+            .invariants();
+        
+        public Renaming(int id, String name, String newName)
+        {
+            super(bindingClass);
+            this.id = id;
+            this.name = name;
+            this.entity = new Entity(id, name);
+            this.newName = newName;
+        }
+        
+        @Override
+        public boolean equals(Object other)
+        {
+            return bindingEquals(other);
+        }
+        
+        @Override
+        public int hashCode()
+        {
+            return bindingHashCode();
+        }
+    }
+    
+    /**
+     * Returns the given number of valid entities, with ids from the given
+     * start.
+     */
+    public static Set<Entity> entities(int start, int size)
+    {
+        final Set<Entity> entities = new LinkedHashSet<Entity>();
+        for (int id = start; id < start + size; id++)
+            entities.add(new Entity(id, "entity" + id));
+        return entities;
+    }
+}
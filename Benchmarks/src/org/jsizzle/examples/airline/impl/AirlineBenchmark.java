@@ -0,0 +1,54 @@
+package org.jsizzle.examples.airline.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jsizzle.example.airline.AirlineSpec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Airline operations checked against their operation schemas, on an airline
+ * already holding the given number of flights. Flights added by a benchmark
+ * accumulate until the next iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AirlineBenchmark
+{
+    @Param({"10", "1000", "100000", "1000000"})
+    public int size;
+    
+    private AirlineImpl airline;
+    
+    @Setup(Level.Iteration)
+    public void setUp()
+    {
+        airline = new AirlineImpl();
+        for (int i = 0; i < size; i++)
+            airline.addFlight("From" + i % 1000, "To" + i, 10);
+    }
+    
+    @Benchmark
+    public boolean addFlight()
+    {
+        final AirlineSpec.AddFlight addFlight = airline.specAddFlight("London", "Rome", 10);
+        addFlight.checkInvariant();
+        return addFlight.invariant();
+    }
+    
+    @Benchmark
+    public boolean hasRoute()
+    {
+        final AirlineSpec.HasRoute hasRoute = airline.specHasRoute("London", "Paris");
+        hasRoute.checkInvariant();
+        return hasRoute.result;
+    }
+}
@@ -0,0 +1,65 @@
+package org.jsizzle.examples.helpdesk.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jsizzle.examples.helpdesk.Issue;
+import org.jsizzle.examples.helpdesk.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Instrumented helpdesk operations, each checked against its operation
+ * schema, on a helpdesk already holding the given number of issues. Issues
+ * added by a benchmark accumulate until the next iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HelpdeskBenchmark
+{
+    @Param({"10", "1000", "100000", "1000000"})
+    public int size;
+    
+    private HelpdeskImpl.Instrumented helpdesk;
+    private Person customer;
+    private Person analyst;
+    private Issue issue;
+    
+    @Setup(Level.Iteration)
+    public void setUp()
+    {
+        final HelpdeskImpl impl = new HelpdeskImpl();
+        customer = impl.addCustomer("Fred");
+        analyst = impl.addAnalyst("Barney");
+        for (int i = 0; i < size; i++)
+            impl.addIssue(customer, analyst);
+        helpdesk = impl.new Instrumented();
+        issue = helpdesk.addIssue(customer, analyst);
+    }
+    
+    @Benchmark
+    public Issue addIssue()
+    {
+        return helpdesk.addIssue(customer, analyst);
+    }
+    
+    @Benchmark
+    public int getAnalystOpenIssues()
+    {
+        return helpdesk.getAnalystOpenIssues(analyst).size();
+    }
+    
+    @Benchmark
+    public Issue setAnalyst()
+    {
+        issue.setAnalyst(analyst);
+        return issue;
+    }
+}
@@ -9,11 +9,10 @@ import static com.google.common.collect.Iterables.concat;
 import static com.google.common.collect.Iterables.filter;
 import static com.google.common.collect.Iterables.getLast;
 import static com.google.common.collect.Sets.union;
+import static java.util.Collections.emptySet;
 import static java.util.Collections.singleton;
 import static java.util.Collections.singletonList;
-import static java.util.Collections.singletonMap;
 import static org.jcurry.ValueObjects.list;
-import static org.jcurry.ValueObjects.override;
 import static org.jcurry.ValueObjects.toSet;
 
 import java.util.HashSet;
@@ -23,13 +22,19 @@ import java.util.Set;
 
 import org.jsizzle.Delta;
 import org.jsizzle.Include;
+import org.jsizzle.Index;
 import org.jsizzle.Initialise;
 import org.jsizzle.Invariant;
+import org.jsizzle.PersistentMap;
 import org.jsizzle.Prime;
 import org.jsizzle.Schema;
 import org.jsizzle.Xi;
 
 import com.google.common.base.Predicate;
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableTable;
+import com.google.common.collect.Table;
 
 @Schema class HelpdeskSpec
 {
@@ -66,6 +71,25 @@ import com.google.common.base.Predicate;
     
     Map<Id, Issue> issues;
     
+    @Index Table<Analyst, Status, Set<Issue>> issuesByAnalystAndStatus()
+    {
+        final Table<Analyst, Status, ImmutableSet.Builder<Issue>> cells = HashBasedTable.create();
+        for (Issue issue : issues.values())
+        {
+            // Tables cannot hold null keys, so unassigned issues are not indexed
+            if (issue.analyst == null || issue.status == null)
+                continue;
+            if (!cells.contains(issue.analyst, issue.status))
+                cells.put(issue.analyst, issue.status, ImmutableSet.<Issue>builder());
+            cells.get(issue.analyst, issue.status).add(issue);
+        }
+        // Immutable throughout, since the index is shared by all callers
+        final ImmutableTable.Builder<Analyst, Status, Set<Issue>> index = ImmutableTable.builder();
+        for (Table.Cell<Analyst, Status, ImmutableSet.Builder<Issue>> cell : cells.cellSet())
+            index.put(cell.getRowKey(), cell.getColumnKey(), cell.getValue().build());
+        return index.build();
+    }
+    
     class Issue
     {
         Customer customer;
@@ -181,8 +205,25 @@ import com.google.common.base.Predicate;
         
         @Invariant boolean issuesUpdated()
         {
-            return helpdesk.after.issues.equals(
-                override(helpdesk.before.issues, singletonMap(id, issue.after)));
+            final Map<Id, Issue> before = helpdesk.before.issues;
+            final Map<Id, Issue> after = helpdesk.after.issues;
+            if (before instanceof PersistentMap<?, ?>)
+            {
+                // The persistent override shares structure with the before
+                // state, so that comparing it with the after state is cheap
+                return after.equals(PersistentMap.copyOf(before).plus(id, issue.after));
+            }
+            // Otherwise check the override entry by entry, without copying
+            if (after.size() != (before.containsKey(id) ? before.size() : before.size() + 1)
+                    || !issue.after.equals(after.get(id)))
+                return false;
+            for (Map.Entry<Id, Issue> entry : before.entrySet())
+            {
+                if (!entry.getKey().equals(id)
+                        && !entry.getValue().equals(after.get(entry.getKey())))
+                    return false;
+            }
+            return true;
         }
     }
 
@@ -296,5 +337,13 @@ import com.google.common.base.Predicate;
             
             return analystIssues.equals(expectedAnalystIssues);
         }
+
+        @Invariant boolean analystOpenIssuesReportedByIndex()
+        {
+            final Set<Issue> expectedAnalystIssues =
+                helpdesk.before.issuesByAnalystAndStatus().get(analyst, Status.OPEN);
+            return analystIssues.equals(expectedAnalystIssues == null
+                ? emptySet() : expectedAnalystIssues);
+        }
     }
 }
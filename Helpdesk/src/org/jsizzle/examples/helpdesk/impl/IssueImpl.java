@@ -4,10 +4,9 @@
 package org.jsizzle.examples.helpdesk.impl;
 
 import static com.google.common.collect.Iterables.transform;
-import static com.google.common.collect.Lists.newArrayList;
-import static com.google.common.collect.Sets.newHashSet;
 import static java.util.Collections.unmodifiableList;
 import static java.util.Collections.unmodifiableSet;
+import static org.jsizzle.Bindings.intern;
 import static org.jsizzle.examples.helpdesk.impl.HelpdeskImpl.specAnalyst;
 import static org.jsizzle.examples.helpdesk.impl.HelpdeskImpl.specCustomer;
 
@@ -19,23 +18,28 @@ import java.util.Set;
 
 import org.jcurry.AsFunction;
 import org.jsizzle.Delta;
+import org.jsizzle.Sampling;
 import org.jsizzle.examples.helpdesk.HelpdeskSpec;
 import org.jsizzle.examples.helpdesk.Issue;
 import org.jsizzle.examples.helpdesk.Note;
 import org.jsizzle.examples.helpdesk.Person;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 
 class IssueImpl implements Issue
 {
+    private final HelpdeskImpl helpdesk;
     private Person analyst;
     private final Person customer;
     private final List<Note> notes = new ArrayList<Note>();
     private final Set<Issue> references = new HashSet<Issue>();
     private boolean open = true;
 
-    IssueImpl(Person analyst, Person customer)
+    IssueImpl(HelpdeskImpl helpdesk, Person analyst, Person customer)
     {
+        this.helpdesk = helpdesk;
         this.analyst = analyst;
         this.customer = customer;
     }
@@ -74,6 +78,7 @@ class IssueImpl implements Issue
     public void addReference(Issue ref)
     {
         references.add(ref);
+        helpdesk.issueChanged(this);
     }
 
     @Override
@@ -143,12 +148,14 @@ class IssueImpl implements Issue
             throw new IllegalStateException("Cannot close unresolved issue");
         
         open = false;
+        helpdesk.issueChanged(this);
     }
     
     @Override
     public void setAnalyst(Person analyst)
     {
         this.analyst = analyst;
+        helpdesk.issueChanged(this);
     }
 
     private void addNote(final Note note)
@@ -160,49 +167,64 @@ class IssueImpl implements Issue
             throw new IllegalStateException("Cannot add notes after a resolution");
         
         notes.add(note);
+        helpdesk.issueChanged(this);
     }
     
     class Instrumented implements Issue
     {
         private final HelpdeskImpl helpdesk;
+        private final Sampling sampling;
         
-        Instrumented(HelpdeskImpl helpdesk)
+        Instrumented(HelpdeskImpl helpdesk, Sampling sampling)
         {
             super();
             this.helpdesk = helpdesk;
+            this.sampling = sampling;
         }
 
         @Override
         public void addNote(Person analyst, String text)
                 throws IllegalStateException
         {
-            final HelpdeskSpec helpdeskBefore = helpdesk.specHelpdesk();
+            final boolean sampled = sampling.sample(HelpdeskSpec.AddIssueNote.class);
+            final HelpdeskSpec helpdeskBefore = sampled ? helpdesk.snapshots.snapshot() : null;
             IssueImpl.this.addNote(analyst, text);
-            new HelpdeskSpec.AddIssueNote(new Delta<HelpdeskSpec>(helpdeskBefore, helpdesk.specHelpdesk()),
-                                          specId(),
-                                          specNote(analyst, text)).checkInvariant();
+            if (sampled)
+            {
+                new HelpdeskSpec.AddIssueNote(new Delta<HelpdeskSpec>(helpdeskBefore, helpdesk.snapshots.snapshot()),
+                                              specId(),
+                                              specNote(analyst, text)).checkInvariant();
+            }
         }
 
         @Override
         public void addNote(Person analyst, byte[] data)
                 throws IllegalStateException
         {
-            final HelpdeskSpec helpdeskBefore = helpdesk.specHelpdesk();
+            final boolean sampled = sampling.sample(HelpdeskSpec.AddIssueNote.class);
+            final HelpdeskSpec helpdeskBefore = sampled ? helpdesk.snapshots.snapshot() : null;
             IssueImpl.this.addNote(analyst, data);
-            new HelpdeskSpec.AddIssueNote(new Delta<HelpdeskSpec>(helpdeskBefore, helpdesk.specHelpdesk()),
-                                          specId(),
-                                          specNote(analyst, data)).checkInvariant();
+            if (sampled)
+            {
+                new HelpdeskSpec.AddIssueNote(new Delta<HelpdeskSpec>(helpdeskBefore, helpdesk.snapshots.snapshot()),
+                                              specId(),
+                                              specNote(analyst, data)).checkInvariant();
+            }
         }
 
         @Override
         public void addNote(Person analyst, Resolution resolution)
                 throws IllegalStateException
         {
-            final HelpdeskSpec helpdeskBefore = helpdesk.specHelpdesk();
+            final boolean sampled = sampling.sample(HelpdeskSpec.AddIssueNote.class);
+            final HelpdeskSpec helpdeskBefore = sampled ? helpdesk.snapshots.snapshot() : null;
             IssueImpl.this.addNote(analyst, resolution);
-            new HelpdeskSpec.AddIssueNote(new Delta<HelpdeskSpec>(helpdeskBefore, helpdesk.specHelpdesk()),
-                                          specId(),
-                                          specNote(analyst, resolution)).checkInvariant();
+            if (sampled)
+            {
+                new HelpdeskSpec.AddIssueNote(new Delta<HelpdeskSpec>(helpdeskBefore, helpdesk.snapshots.snapshot()),
+                                              specId(),
+                                              specNote(analyst, resolution)).checkInvariant();
+            }
         }
 
         @Override
@@ -211,20 +233,28 @@ class IssueImpl implements Issue
             if (ref instanceof Instrumented)
                 ref = ((Instrumented)ref).asIssueImpl();
             
-            final HelpdeskSpec helpdeskBefore = helpdesk.specHelpdesk();
+            final boolean sampled = sampling.sample(HelpdeskSpec.AddIssueReference.class);
+            final HelpdeskSpec helpdeskBefore = sampled ? helpdesk.snapshots.snapshot() : null;
             IssueImpl.this.addReference(ref);
-            new HelpdeskSpec.AddIssueReference(new Delta<HelpdeskSpec>(helpdeskBefore, helpdesk.specHelpdesk()),
-                                               specId(),
-                                               ((IssueImpl)ref).specId()).checkInvariant();
+            if (sampled)
+            {
+                new HelpdeskSpec.AddIssueReference(new Delta<HelpdeskSpec>(helpdeskBefore, helpdesk.snapshots.snapshot()),
+                                                   specId(),
+                                                   ((IssueImpl)ref).specId()).checkInvariant();
+            }
         }
 
         @Override
         public void close() throws IllegalStateException
         {
-            final HelpdeskSpec helpdeskBefore = helpdesk.specHelpdesk();
+            final boolean sampled = sampling.sample(HelpdeskSpec.CloseIssue.class);
+            final HelpdeskSpec helpdeskBefore = sampled ? helpdesk.snapshots.snapshot() : null;
             IssueImpl.this.close();
-            new HelpdeskSpec.CloseIssue(new Delta<HelpdeskSpec>(helpdeskBefore, helpdesk.specHelpdesk()),
-                                        specId()).checkInvariant();
+            if (sampled)
+            {
+                new HelpdeskSpec.CloseIssue(new Delta<HelpdeskSpec>(helpdeskBefore, helpdesk.snapshots.snapshot()),
+                                            specId()).checkInvariant();
+            }
         }
 
         @Override
@@ -260,11 +290,15 @@ class IssueImpl implements Issue
         @Override
         public void setAnalyst(Person analyst)
         {
-            final HelpdeskSpec helpdeskBefore = helpdesk.specHelpdesk();
+            final boolean sampled = sampling.sample(HelpdeskSpec.SetIssueAnalyst.class);
+            final HelpdeskSpec helpdeskBefore = sampled ? helpdesk.snapshots.snapshot() : null;
             IssueImpl.this.setAnalyst(analyst);
-            new HelpdeskSpec.SetIssueAnalyst(new Delta<HelpdeskSpec>(helpdeskBefore, helpdesk.specHelpdesk()),
-                                             specId(),
-                                             specAnalyst(analyst)).checkInvariant();
+            if (sampled)
+            {
+                new HelpdeskSpec.SetIssueAnalyst(new Delta<HelpdeskSpec>(helpdeskBefore, helpdesk.snapshots.snapshot()),
+                                                 specId(),
+                                                 specAnalyst(analyst)).checkInvariant();
+            }
         }
         
         private IssueImpl asIssueImpl()
@@ -276,33 +310,33 @@ class IssueImpl implements Issue
     @AsFunction
     HelpdeskSpec.Id specId()
     {
-        return new HelpdeskSpec.Id(this);
+        return intern(new HelpdeskSpec.Id(this));
     }
     
     @SuppressWarnings("unchecked")
     @AsFunction
     HelpdeskSpec.Issue specIssue()
     {
-        return new HelpdeskSpec.Issue(specCustomer(getCustomer()),
-                                      specAnalyst(getAnalyst()),
-                                      newHashSet(transform((Set<IssueImpl>)getReferences(), specId)),
-                                      newArrayList(Lists.transform(getNotes(), specNote)),
-                                      isOpen() ? HelpdeskSpec.Status.OPEN : HelpdeskSpec.Status.CLOSED);
+        return intern(new HelpdeskSpec.Issue(specCustomer(getCustomer()),
+                                             specAnalyst(getAnalyst()),
+                                             ImmutableSet.copyOf(transform((Set<IssueImpl>)getReferences(), specId)),
+                                             ImmutableList.copyOf(Lists.transform(getNotes(), specNote)),
+                                             isOpen() ? HelpdeskSpec.Status.OPEN : HelpdeskSpec.Status.CLOSED));
     }
     
     static HelpdeskSpec.TextNote specNote(Person analyst, String text)
     {
-        return new HelpdeskSpec.TextNote(specAnalyst(analyst), text);
+        return intern(new HelpdeskSpec.TextNote(specAnalyst(analyst), text));
     }
     
     static HelpdeskSpec.AttachmentNote specNote(Person analyst, byte[] data)
     {
-        return new HelpdeskSpec.AttachmentNote(specAnalyst(analyst), new HelpdeskSpec.File(Arrays.hashCode(data)));
+        return intern(new HelpdeskSpec.AttachmentNote(specAnalyst(analyst), intern(new HelpdeskSpec.File(Arrays.hashCode(data)))));
     }
     
     static HelpdeskSpec.ResolutionNote specNote(Person analyst, Issue.Resolution resolution)
     {
-        return new HelpdeskSpec.ResolutionNote(specAnalyst(analyst), HelpdeskSpec.Resolution.valueOf(resolution.name()));
+        return intern(new HelpdeskSpec.ResolutionNote(specAnalyst(analyst), HelpdeskSpec.Resolution.valueOf(resolution.name())));
     }
     
     @AsFunction
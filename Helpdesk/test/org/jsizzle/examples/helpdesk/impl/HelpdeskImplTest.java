@@ -1,5 +1,11 @@
 package org.jsizzle.examples.helpdesk.impl;
 
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jsizzle.Sampling;
 import org.jsizzle.examples.helpdesk.Issue;
 import org.jsizzle.examples.helpdesk.Person;
 import org.junit.Test;
@@ -113,4 +119,42 @@ public class HelpdeskImplTest
         helpdesk.addIssue(fred, barney);
         helpdesk.getAnalystOpenIssues(barney);
     }
+    
+    /* Capturing the state of a large helpdesk should only specify the
+     * issues that each operation changes, so the issues specified per
+     * operation must not grow with the number of issues. Checking each
+     * captured state still visits every issue, so this says nothing of
+     * the cost of checking. */
+    @Test(timeout = 60000) public void scalesToManyIssues()
+    {
+        final int reads = customerReadsForOperations(1000);
+        assertTrue(reads > 0);
+        assertEquals(reads, customerReadsForOperations(100000));
+    }
+    
+    /* Counts the reads of the customer's name by the operations, which
+     * specify it once for each issue specified. */
+    private static int customerReadsForOperations(int issues)
+    {
+        final AtomicInteger reads = new AtomicInteger();
+        final Person fred = new Person()
+        {
+            @Override public String getName()
+            {
+                reads.incrementAndGet();
+                return "Fred";
+            }
+        };
+        final HelpdeskImpl impl = new HelpdeskImpl();
+        final Person barney = impl.addAnalyst("Barney");
+        for (int i = 0; i < issues; i++)
+            impl.addIssue(fred, barney);
+        final HelpdeskImpl.Instrumented instrumented = impl.new Instrumented(Sampling.always);
+        // The first snapshot specifies every issue
+        final Person wilma = instrumented.addAnalyst("Wilma");
+        reads.set(0);
+        for (int i = 0; i < 100; i++)
+            instrumented.addIssue(fred, barney).setAnalyst(wilma);
+        return reads.get();
+    }
 }
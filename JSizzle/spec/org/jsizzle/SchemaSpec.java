@@ -30,6 +30,7 @@ import static org.jcurry.ValueObjects.transform;
 import static org.jcurry.ValueObjects.uniques;
 import static org.jsizzle.Delta.deltas;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -40,6 +41,7 @@ import org.jsizzle.JavaSpec.Method;
 import org.jsizzle.JavaSpec.Modifier;
 import org.jsizzle.JavaSpec.Name;
 import org.jsizzle.JavaSpec.PrimitiveName;
+import org.jsizzle.JavaSpec.Signature;
 import org.jsizzle.JavaSpec.Type;
 import org.jsizzle.JavaSpec.TypeName;
 import org.jsizzle.JavaSpec.TypeScope;
@@ -158,11 +160,15 @@ import com.google.common.base.Predicate;
     /**
      * The <code>JSizzleTypeName</code> enumeration defines the type
      * names that are built into <font
-     * face="Cooper Black">JSizzle</font>.
+     * face="Cooper Black">JSizzle</font>. <code>LAZY</code> stands
+     * for the <code>lazy</code> attribute of the
+     * <code>@Initialise</code> annotation, and accompanies
+     * <code>INITIALISE</code> in the annotations of a lazy
+     * initialiser.
      */
     enum JSizzleTypeName implements TypeName
     {
-        SCHEMA, BINDING, INCLUDE, INVARIANT, INITIALISE, SCHEMAFIELD
+        SCHEMA, BINDING, INCLUDE, INVARIANT, INITIALISE, SCHEMAFIELD, LAZY
     };
 
     /**
@@ -197,8 +203,9 @@ import com.google.common.base.Predicate;
      * objects are created from these using the curried constructor
      * function, re-using the current type resolution map.
      * <p>
-     * Note that this field is not used in any invariant, but its
-     * existence asserts that all member types that are in both input
+     * Note that this value is not used in any invariant, but since
+     * checking the binding computes it, it asserts that all member
+     * types that are in both input
      * and output classes are transformed according to
      * <code>SchemaSpec</code>. Since all input types are necessarily
      * in the output due to the invariant
@@ -207,7 +214,7 @@ import com.google.common.base.Predicate;
      * member types of the output are necessarily derived from input
      * member types).
      */
-    @Initialise Set<SchemaSpec> memberSchemas()
+    @Initialise(lazy = true) Set<SchemaSpec> memberSchemas()
     {
         return transform(deltas(toSet(type.before.memberTypes),
                                 toSet(type.after.memberTypes),
@@ -420,11 +427,15 @@ import com.google.common.base.Predicate;
 
         /**
          * After transformation, an initialise method is marked as
-         * <i>private</i> and <i>final</i>.
+         * <i>private</i> and <i>final</i>; unless it is lazy, when
+         * it is replaced by a <i>public</i> and <i>final</i> method
+         * that caches its value (see <code>lazyInitialiser</code>).
          */
-        @Invariant boolean isPrivateFinal()
+        @Invariant boolean isPrivateFinalOrLazy()
         {
-            return method.after.visibility.equals(Visibility.PRIVATE)
+            return (method.after.visibility.equals(Visibility.PRIVATE)
+                    || (method.before.annotations.contains(JSizzleTypeName.LAZY)
+                        && method.after.visibility.equals(Visibility.PUBLIC)))
                 && method.after.otherModifiers.equals(
                        singleton(Modifier.FINAL));
         }
@@ -525,8 +536,9 @@ import com.google.common.base.Predicate;
      * <code>SchemaMethod</code>s are constructed using the
      * constructor function.
      * <p>
-     * Note that this field is not used in any invariant, but its
-     * existence asserts that all methods that are in both input and
+     * Note that this value is not used in any invariant, but since
+     * checking the binding computes it, it asserts that all methods
+     * that are in both input and
      * output classes are transformed according to
      * <code>SchemaMethod</code>. Since all input methods are
      * necessarily in the output due to the invariant
@@ -534,7 +546,7 @@ import com.google.common.base.Predicate;
      * methods of the input class are transformed (but not all methods
      * of the output are necessarily derived from input methods).
      */
-    @Initialise Set<SchemaMethod> memberSchemaMethods()
+    @Initialise(lazy = true) Set<SchemaMethod> memberSchemaMethods()
     {
         switch (type.before.metaType)
         {
@@ -592,7 +604,9 @@ import com.google.common.base.Predicate;
 
     /**
      * If the input is a class, then the output must contain all of
-     * the expected schema fields.
+     * the expected schema fields; except that an expanded field may
+     * instead be provided by a getter method, delegating to the
+     * included binding.
      * <p>
      * Note that this specification is abstract with respect to any
      * additional fields that are injected in the output class for
@@ -601,9 +615,34 @@ import com.google.common.base.Predicate;
     @Invariant boolean fieldsContainExpectedFields()
     {
         return type.before.metaType != MetaType.CLASS
-                || transform(type.after.fields,
-                             variableNameAndType)
-                       .containsAll(getExpectedFields());
+                || all(getExpectedFields(),
+                       or(in(transform(type.after.fields,
+                                       variableNameAndType)),
+                          and(in(list(getExpandedFields())),
+                              fieldProvidedByGetter.apply(this))));
+    }
+
+    /**
+     * The <code>fieldProvidedByGetter(NameAndType)</code> utility
+     * determines if the output class has a <i>public</i> getter
+     * method for the given field, named as a Lombok getter would be.
+     * 
+     * @param field an expected schema field
+     */
+    boolean fieldProvidedByGetter(NameAndType field)
+    {
+        final String identifier = field.name.identifier;
+        final String getterName =
+            (field.typeName == PrimitiveName.BOOLEAN ? "is" : "get")
+                + Character.toUpperCase(identifier.charAt(0))
+                + identifier.substring(1);
+        return contains(transform(filter(type.after.methods,
+                     compose(equalTo(Visibility.PUBLIC),
+                             Method.getVisibility)),
+                                  Method.getSignature),
+                        new Signature(new Name(getterName),
+                                      Collections.<TypeName>emptyList(),
+                                      field.typeName));
     }
 
     /**
@@ -617,7 +656,7 @@ import com.google.common.base.Predicate;
      * <code>SchemaFields</code>s are constructed using the
      * constructor function.
      */
-    @Initialise Set<SchemaField> schemaFields()
+    @Initialise(lazy = true) Set<SchemaField> schemaFields()
     {
         switch (type.before.metaType)
         {
@@ -684,21 +723,21 @@ import com.google.common.base.Predicate;
      * Expanded fields are those that are added to the output class
      * from the fields of a direct field marked <code>@Include</code>.
      * Initialised fields are those that are included by virtue of the
-     * existence of an initialise method (note that an initialise
-     * method can initialise any direct or expanded field, or create a
-     * new field if none of the fields match the method name).
+     * existence of an initialise method that is not lazy (note that
+     * an initialise method can initialise any direct or expanded
+     * field, or create a new field if none of the fields match the
+     * method name).
      */
     Set<NameAndType> getExpectedFields()
     {
         final List<NameAndType> directFields =
             transform(type.before.fields, variableNameAndType);
         
-        final Iterable<NameAndType> expandedFields =
-            concat(transform(type.before.fields,
-                             injectedFieldsForField.apply(this)));
+        final Iterable<NameAndType> expandedFields = getExpandedFields();
         
         final Iterable<NameAndType> initialisedFields =
-            concat(transform(type.before.methods,
+            concat(transform(filter(type.before.methods,
+                                    not(lazyInitialiser.apply(this))),
                              injectedFieldsForMethod.apply(this)));
         
         return toSet(uniques(concat(directFields,
@@ -707,6 +746,16 @@ import com.google.common.base.Predicate;
                              NameAndType.getName));
     }
 
+    /**
+     * <code>getExpandedFields()</code> is a helper method that gets
+     * the fields expanded from all included fields, in order.
+     */
+    Iterable<NameAndType> getExpandedFields()
+    {
+        return concat(transform(type.before.fields,
+                                injectedFieldsForField.apply(this)));
+    }
+
     /**
      * <code>constructorArgsForField(Variable)</code> is a utility
      * function that obtains the expected arguments for a field in the
@@ -838,6 +887,37 @@ import com.google.common.base.Predicate;
         }
     }
 
+    /**
+     * The <code>lazyInitialiser(Method)</code> utility determines if
+     * the given input method is a lazy initialiser, marked
+     * <code>@Initialise(lazy = true)</code>, which is replaced in the
+     * output class by a <i>public</i> method of the same signature
+     * that computes and caches its value, rather than initialising a
+     * field.
+     * 
+     * @param method a method of the input class
+     */
+    boolean lazyInitialiser(Method method)
+    {
+        return method.annotations.contains(JSizzleTypeName.INITIALISE)
+            && method.annotations.contains(JSizzleTypeName.LAZY);
+    }
+
+    /**
+     * A lazy initialiser contributes no field: no field of its name
+     * exists after transformation (its value is cached in a field
+     * of another name). In particular, an initialiser of a direct
+     * or expanded field is never lazy.
+     */
+    @Invariant boolean lazyInitialisersHaveNoField()
+    {
+        return isEmpty(filter(type.after.fields,
+                              compose(in(toSet(transform(filter(type.before.methods,
+                                                                lazyInitialiser.apply(this)),
+                                                         Method.getName))),
+                                      Variable.getName)));
+    }
+
     /**
      * The <code>fieldInitialisedLocally(NameAndType)</code> utility
      * determines if the given field is initialised by an initialiser
@@ -5,18 +5,21 @@ import static java.util.Collections.disjoint;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static lombok.eclipse.Eclipse.fromQualifiedName;
+import static lombok.eclipse.handlers.EclipseHandlerUtil.copyAnnotations;
+import static lombok.eclipse.handlers.EclipseHandlerUtil.createAnnotation;
 import static lombok.eclipse.handlers.EclipseHandlerUtil.getGeneratedBy;
 import static lombok.eclipse.handlers.EclipseHandlerUtil.annotationTypeMatches;
 import static lombok.eclipse.Eclipse.toQualifiedName;
 import static lombok.eclipse.HandleAsFunction.generateFunction;
+import static lombok.core.TransformationsUtil.toGetterName;
 import static lombok.eclipse.Source.source;
 import static lombok.eclipse.ast.AstUtilities.findLocalType;
 import static lombok.eclipse.handlers.EclipseHandlerUtil.fieldExists;
 import static lombok.eclipse.handlers.EclipseHandlerUtil.generateNullCheck;
 import static lombok.eclipse.handlers.EclipseHandlerUtil.injectField;
 import static lombok.eclipse.handlers.EclipseHandlerUtil.injectMethod;
+import static lombok.eclipse.handlers.EclipseHandlerUtil.methodExists;
 import static lombok.eclipse.handlers.EclipseHandlerUtil.toEclipseModifier;
-import static lombok.eclipse.handlers.LombokUtil.generateEqualsAndHashCode;
 import static lombok.eclipse.handlers.LombokUtil.generateGetterForField;
 import static lombok.eclipse.handlers.LombokUtil.generateToStringForType;
 import static org.eclipse.jdt.internal.compiler.ast.ASTNode.IsMemberType;
@@ -25,8 +28,10 @@ import static org.eclipse.jdt.internal.compiler.classfmt.ClassFileConstants.AccE
 import static org.eclipse.jdt.internal.compiler.classfmt.ClassFileConstants.AccFinal;
 import static org.eclipse.jdt.internal.compiler.classfmt.ClassFileConstants.AccInterface;
 import static org.eclipse.jdt.internal.compiler.classfmt.ClassFileConstants.AccPrivate;
+import static org.eclipse.jdt.internal.compiler.classfmt.ClassFileConstants.AccProtected;
 import static org.eclipse.jdt.internal.compiler.classfmt.ClassFileConstants.AccPublic;
 import static org.eclipse.jdt.internal.compiler.classfmt.ClassFileConstants.AccStatic;
+import static org.eclipse.jdt.internal.compiler.classfmt.ClassFileConstants.AccVolatile;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -44,6 +49,8 @@ import lombok.core.AnnotationValues;
 import lombok.eclipse.ast.JavaSpecMapping;
 import lombok.eclipse.handlers.EclipseHandlerUtil.MemberExistsResult;
 
+import org.eclipse.jdt.internal.compiler.ASTVisitor;
+import org.eclipse.jdt.internal.compiler.ast.AND_AND_Expression;
 import org.eclipse.jdt.internal.compiler.ast.ASTNode;
 import org.eclipse.jdt.internal.compiler.ast.AbstractMethodDeclaration;
 import org.eclipse.jdt.internal.compiler.ast.AbstractVariableDeclaration;
@@ -51,32 +58,59 @@ import org.eclipse.jdt.internal.compiler.ast.AllocationExpression;
 import org.eclipse.jdt.internal.compiler.ast.Annotation;
 import org.eclipse.jdt.internal.compiler.ast.Argument;
 import org.eclipse.jdt.internal.compiler.ast.Assignment;
+import org.eclipse.jdt.internal.compiler.ast.BinaryExpression;
+import org.eclipse.jdt.internal.compiler.ast.Block;
+import org.eclipse.jdt.internal.compiler.ast.CaseStatement;
+import org.eclipse.jdt.internal.compiler.ast.CastExpression;
+import org.eclipse.jdt.internal.compiler.ast.ClassLiteralAccess;
 import org.eclipse.jdt.internal.compiler.ast.CompilationUnitDeclaration;
+import org.eclipse.jdt.internal.compiler.ast.ConditionalExpression;
 import org.eclipse.jdt.internal.compiler.ast.ConstructorDeclaration;
+import org.eclipse.jdt.internal.compiler.ast.EqualExpression;
 import org.eclipse.jdt.internal.compiler.ast.ExplicitConstructorCall;
 import org.eclipse.jdt.internal.compiler.ast.Expression;
+import org.eclipse.jdt.internal.compiler.ast.FalseLiteral;
 import org.eclipse.jdt.internal.compiler.ast.FieldDeclaration;
 import org.eclipse.jdt.internal.compiler.ast.FieldReference;
 import org.eclipse.jdt.internal.compiler.ast.IfStatement;
+import org.eclipse.jdt.internal.compiler.ast.ImportReference;
+import org.eclipse.jdt.internal.compiler.ast.IntLiteral;
 import org.eclipse.jdt.internal.compiler.ast.LocalDeclaration;
+import org.eclipse.jdt.internal.compiler.ast.LongLiteral;
 import org.eclipse.jdt.internal.compiler.ast.MarkerAnnotation;
 import org.eclipse.jdt.internal.compiler.ast.MessageSend;
 import org.eclipse.jdt.internal.compiler.ast.MethodDeclaration;
+import org.eclipse.jdt.internal.compiler.ast.NullLiteral;
 import org.eclipse.jdt.internal.compiler.ast.OperatorIds;
+import org.eclipse.jdt.internal.compiler.ast.ParameterizedSingleTypeReference;
 import org.eclipse.jdt.internal.compiler.ast.ParameterizedQualifiedTypeReference;
 import org.eclipse.jdt.internal.compiler.ast.QualifiedNameReference;
+import org.eclipse.jdt.internal.compiler.ast.QualifiedThisReference;
 import org.eclipse.jdt.internal.compiler.ast.QualifiedTypeReference;
+import org.eclipse.jdt.internal.compiler.ast.ReturnStatement;
 import org.eclipse.jdt.internal.compiler.ast.SingleNameReference;
 import org.eclipse.jdt.internal.compiler.ast.SingleTypeReference;
 import org.eclipse.jdt.internal.compiler.ast.Statement;
 import org.eclipse.jdt.internal.compiler.ast.StringLiteral;
+import org.eclipse.jdt.internal.compiler.ast.SuperReference;
+import org.eclipse.jdt.internal.compiler.ast.SwitchStatement;
+import org.eclipse.jdt.internal.compiler.ast.SynchronizedStatement;
 import org.eclipse.jdt.internal.compiler.ast.ThisReference;
+import org.eclipse.jdt.internal.compiler.ast.TrueLiteral;
+import org.eclipse.jdt.internal.compiler.ast.TryStatement;
 import org.eclipse.jdt.internal.compiler.ast.TypeDeclaration;
 import org.eclipse.jdt.internal.compiler.ast.TypeReference;
 import org.eclipse.jdt.internal.compiler.ast.UnaryExpression;
+import org.eclipse.jdt.internal.compiler.ast.Wildcard;
+import org.eclipse.jdt.internal.compiler.lookup.BlockScope;
+import org.eclipse.jdt.internal.compiler.lookup.ClassScope;
 import org.eclipse.jdt.internal.compiler.lookup.TypeConstants;
+import org.eclipse.jdt.internal.compiler.lookup.TypeIds;
+import org.jsizzle.Bindings;
 import org.jsizzle.Delta;
+import org.jsizzle.Disjoint;
 import org.jsizzle.Include;
+import org.jsizzle.Index;
 import org.jsizzle.Initialise;
 import org.jsizzle.Invariant;
 import org.jsizzle.JavaSpec.Type;
@@ -84,18 +118,38 @@ import org.jsizzle.Schema;
 import org.jsizzle.SchemaField;
 import org.jsizzle.SchemaSpec;
 
+import com.google.common.base.Supplier;
+
 public class HandleSchema extends EclipseAnnotationHandler<Schema>
 {
     private static final char[][] ORG_JSIZZLE_BINDING = fromQualifiedName("org.jsizzle.Binding");
+    private static final char[][] ORG_JSIZZLE_BINDINGCLASS = fromQualifiedName("org.jsizzle.BindingClass");
     private static final char[][] ORG_JSIZZLE_SCHEMA = fromQualifiedName("org.jsizzle.Schema");
     private static final char[][] ORG_JSIZZLE_SCHEMAFIELD = fromQualifiedName("org.jsizzle.SchemaField");
     private static final char[][] INCLUSION_DIRECT = fromQualifiedName("org.jsizzle.Binding.Inclusion.DIRECT");
     private static final char[][] INCLUSION_INCLUDED = fromQualifiedName("org.jsizzle.Binding.Inclusion.INCLUDED");
     private static final char[][] INCLUSION_EXPANDED = fromQualifiedName("org.jsizzle.Binding.Inclusion.EXPANDED");
+    private static final char[][] INCLUSION_IDENTITY = fromQualifiedName("org.jsizzle.Binding.Inclusion.IDENTITY");
+    private static final char[][] INCLUSION_LAZY = fromQualifiedName("org.jsizzle.Binding.Inclusion.LAZY");
+    private static final char[][] ORG_JSIZZLE_INVARIANTMETRICS = fromQualifiedName("org.jsizzle.InvariantMetrics");
+    private static final char[][] ORG_JSIZZLE_BINDINGS = fromQualifiedName("org.jsizzle.Bindings");
+    private static final char[][] JAVA_LANG_SYSTEM = fromQualifiedName("java.lang.System");
     private static final char[] IDENTITY_NAME = "identity".toCharArray();
+    private static final char[] BINDING_CLASS_NAME = "$bindingClass".toCharArray();
+    private static final char[] INVARIANT_METRICS_NAME = "$invariantMetrics".toCharArray();
+    private static final char[] OTHER_NAME = "other".toCharArray();
+    private static final char[] DEFERRING_NAME = "$deferring".toCharArray();
+    private static final char[] SLOT_NAME = "slot".toCharArray();
     private static final List<Argument> noArgs = emptyList();
+    /** Collection types whose arguments are frozen by Bindings.freeze */
+    private static final Set<String> FROZEN_TYPES = new HashSet<String>(asList(
+        "Set", "SortedSet", "List", "Map", "SortedMap",
+        "java.util.Set", "java.util.SortedSet", "java.util.List", "java.util.Map", "java.util.SortedMap"));
+    private static final Set<String> PRIMITIVE_TYPES = new HashSet<String>(asList(
+        "boolean", "byte", "char", "short", "int", "long", "float", "double"));
 
     private static final boolean instrument = Boolean.valueOf(System.getProperty("org.jsizzle.instrument"));
+    private static final boolean metrics = Boolean.valueOf(System.getProperty("org.jsizzle.metrics"));
 
     @Override
     public void handle(AnnotationValues<Schema> annotation,
@@ -179,6 +233,8 @@ public class HandleSchema extends EclipseAnnotationHandler<Schema>
             }
             
             final ConstructorBuilder consBuilder = new ConstructorBuilder(typeNode, source);
+            final List<EclipseNode> indexNodes = new ArrayList<EclipseNode>();
+            final List<EclipseNode> lazyNodes = new ArrayList<EclipseNode>();
             for (EclipseNode child : typeNode.down())
             {
                 if (child.getKind() == Kind.FIELD)
@@ -216,10 +272,23 @@ public class HandleSchema extends EclipseAnnotationHandler<Schema>
                             }
                             consBuilder.addIncludedField(new EmbellishedSchemaField(child, errorNode, source), includeCons);
                             
+                            final boolean delegate = createAnnotation(Include.class, includeAnnNode).getInstance().delegate();
                             for (AbstractVariableDeclaration variableToInclude : variablesToInclude(includedTypeNode, includeCons))
                             {
-                                if (fieldExists(new String(variableToInclude.name), typeNode) == MemberExistsResult.NOT_EXISTS)
+                                if (fieldExists(new String(variableToInclude.name), typeNode) == MemberExistsResult.NOT_EXISTS
+                                    && !consBuilder.isDelegated(variableToInclude.name))
                                 {
+                                    if (delegate)
+                                    {
+                                        // Read the member from the included binding, instead of copying it
+                                        final MethodDeclaration getter = injectDelegatingGetter(typeNode, field.name, variableToInclude, source);
+                                        consBuilder.addDelegatedField(variableToInclude,
+                                                                      getter.selector,
+                                                                      generateFunction(typeNode.getNodeFor(getter), AccessLevel.PUBLIC, child, source),
+                                                                      field);
+                                        continue;
+                                    }
+
                                     // NOTE: Must set source positions on copied type, because for some reason Eclipse
                                     // doesn't like argument types with source positions from a different scope.
                                     final FieldDeclaration expandedField = injectSchemaField(typeNode,
@@ -264,6 +333,16 @@ public class HandleSchema extends EclipseAnnotationHandler<Schema>
                                 child.addError("Invariant method must have no arguments and return a boolean.");
                             }
                         }
+                        else if (findAnnotation(child, Index.class) != null)
+                        {
+                            if (method.arguments != null && method.arguments.length > 0)
+                                child.addError("Index method cannot have arguments.");
+                            else if (method.returnType.dimensions() == 0
+                                     && PRIMITIVE_TYPES.contains(toQualifiedName(method.returnType.getTypeName())))
+                                child.addError("Index method must return an object.");
+                            else
+                                indexNodes.add(child);
+                        }
                         else
                         {
                             // Initialiser methods are marked with @Initialise
@@ -274,6 +353,17 @@ public class HandleSchema extends EclipseAnnotationHandler<Schema>
                                 {
                                     child.addError("Initialiser cannot have arguments.");
                                 }
+                                else if (createAnnotation(Initialise.class, initialiseAnnNode).getInstance().lazy())
+                                {
+                                    // Lazy values have no field, but are cached like indexes
+                                    if (findField(typeNode, child.getName()) != null || consBuilder.isDelegated(method.selector))
+                                        child.addError("Lazy initialiser cannot initialise a field.");
+                                    else if (method.returnType.dimensions() == 0
+                                        && PRIMITIVE_TYPES.contains(toQualifiedName(method.returnType.getTypeName())))
+                                        child.addError("Lazy initialiser must return an object.");
+                                    else
+                                        lazyNodes.add(child);
+                                }
                                 else
                                 {
                                     // If the field to be initialised does not exist, create it.
@@ -304,18 +394,55 @@ public class HandleSchema extends EclipseAnnotationHandler<Schema>
                 }
             }
             
+            // Cache the indexes and lazy values, after the loop so that their fields are not schema fields
+            for (EclipseNode indexNode : indexNodes)
+            {
+                injectCachedMethod(typeNode, indexNode, source);
+                consBuilder.addIndex((MethodDeclaration)indexNode.get());
+            }
+            for (EclipseNode lazyNode : lazyNodes)
+            {
+                final char[] accessorName = injectCachedMethod(typeNode, lazyNode, source);
+                consBuilder.addIndex((MethodDeclaration)lazyNode.get());
+                consBuilder.addLazyField(lazyNode.getName(), accessorName, ((MethodDeclaration)lazyNode.get()).returnType);
+            }
+            
             // If no fields, create an Object field for identity
             if (!consBuilder.hasFields())
-                consBuilder.addDirectField(injectIdentityField(typeNode, source));
+            {
+                final FieldDeclaration identityField = injectIdentityField(typeNode, source);
+                consBuilder.addIdentityField(identityField,
+                    generateFunction(typeNode.getNodeFor(identityField), AccessLevel.PRIVATE, errorNode, source));
+            }
+            
+            // Inject the shared binding class table, after the accessor functions it refers to
+            injectLastField(typeNode, consBuilder.buildBindingClass());
+            if (metrics && consBuilder.hasInvariants())
+                injectLastField(typeNode, consBuilder.buildInvariantMetrics());
             
             // Inject the constructor and construction function
             final ConstructorDeclaration constructor = consBuilder.build();
             injectMethod(typeNode, constructor);
             generateFunction(typeNode.getNodeFor(constructor), AccessLevel.PUBLIC, errorNode, source);
+            if (consBuilder.hasInvariants())
+                injectMethod(typeNode, consBuilder.buildEvaluateInvariants());
+            if (methodExists("deferred", typeNode) == MemberExistsResult.NOT_EXISTS)
+                injectMethod(typeNode, consBuilder.buildDeferredFactory(constructor));
+            
+            // Give the runtime direct access to the members, by slot
+            if (methodExists("get", typeNode) == MemberExistsResult.NOT_EXISTS)
+                injectMethod(typeNode, consBuilder.buildGet());
+            if (consBuilder.hasPrimitiveSlots())
+            {
+                if (methodExists("slotEquals", typeNode) == MemberExistsResult.NOT_EXISTS)
+                    injectMethod(typeNode, consBuilder.buildSlotEquals());
+                if (methodExists("slotHashCode", typeNode) == MemberExistsResult.NOT_EXISTS)
+                    injectMethod(typeNode, consBuilder.buildSlotHashCode());
+            }
             
             // Create toString, equals and hashCode
             generateToStringForType(typeNode, errorNode);
-            generateEqualsAndHashCode(typeNode, errorNode);
+            generateEqualsAndHashCode(typeNode, source);
         }
         
         // All member types of a schema are schemas. Do not rely on annotation handling.
@@ -423,6 +550,222 @@ public class HandleSchema extends EclipseAnnotationHandler<Schema>
         return injectSchemaField(typeNode, IDENTITY_NAME, type, AccPrivate, source);
     }
 
+    /**
+     * Turns an index or lazy initialiser method into one that computes its
+     * result on the first call and caches it. For a method <code>R index()</code>, the
+     * method is renamed <code>$compute$index</code> and the following
+     * injected:
+     * <pre>
+     * private volatile R $index;
+     * 
+     * public final R index()
+     * {
+     *     R index = this.$index;
+     *     if (index == null)
+     *     {
+     *         synchronized (this)
+     *         {
+     *             index = this.$index;
+     *             if (index == null)
+     *                 this.$index = index = this.$compute$index();
+     *         }
+     *     }
+     *     return index;
+     * }
+     * </pre>
+     * so that the value is computed at most once.
+     * Returns the name of the access function for the new method.
+     */
+    private static char[] injectCachedMethod(final EclipseNode typeNode,
+                                             final EclipseNode methodNode,
+                                             final Source source)
+    {
+        final MethodDeclaration compute = (MethodDeclaration)methodNode.get();
+        final char[] name = compute.selector;
+        final char[] fieldName = ("$" + new String(name)).toCharArray();
+        compute.selector = ("$compute$" + new String(name)).toCharArray();
+        compute.modifiers = (compute.modifiers & ~AccPublic) | AccPrivate | AccFinal;
+        
+        final FieldDeclaration field = source.generated(new FieldDeclaration(fieldName, source.pS, source.pE));
+        field.declarationSourceStart = field.sourceStart;
+        field.declarationEnd = field.declarationSourceEnd = field.sourceEnd;
+        field.modifiers = AccPrivate | AccVolatile;
+        field.type = source.copyType(compute.returnType, true);
+        injectField(typeNode, field);
+        
+        final MethodDeclaration method = source.generated(new MethodDeclaration(
+            ((CompilationUnitDeclaration)typeNode.top().get()).compilationResult));
+        method.modifiers = AccPublic | AccFinal;
+        method.returnType = source.copyType(compute.returnType, true);
+        method.selector = name;
+        // Keep the annotations, so the method is transformed only in its modifiers
+        method.annotations = copyAnnotations(source.node, compute.annotations);
+        method.bits |= Eclipse.ECLIPSE_DO_NOT_TOUCH_FLAG;
+        method.bodyStart = method.declarationSourceStart = method.sourceStart;
+        method.bodyEnd = method.declarationSourceEnd = method.sourceEnd;
+        
+        final LocalDeclaration index = source.generated(new LocalDeclaration(name, source.pS, source.pE));
+        index.type = source.copyType(compute.returnType, false);
+        index.initialization = createThisFieldReference(fieldName, source);
+        
+        final MessageSend computeCall = source.generated(new MessageSend());
+        computeCall.receiver = source.generated(new ThisReference(source.pS, source.pE));
+        computeCall.selector = compute.selector;
+        final Assignment assignIndex = source.generated(new Assignment(
+            source.generated(new SingleNameReference(name, source.p)), computeCall, source.pE));
+        final Assignment assignField = source.generated(new Assignment(
+            createThisFieldReference(fieldName, source), assignIndex, source.pE));
+        final EqualExpression isNull = source.generated(new EqualExpression(
+            source.generated(new SingleNameReference(name, source.p)),
+            source.generated(new NullLiteral(source.pS, source.pE)),
+            OperatorIds.EQUAL_EQUAL));
+        
+        final Block locked = source.generated(new Block(0));
+        locked.statements = new Statement[] {
+            source.generated(new Assignment(source.generated(new SingleNameReference(name, source.p)),
+                                            createThisFieldReference(fieldName, source),
+                                            source.pE)),
+            source.generated(new IfStatement(isNull, assignField, source.pS, source.pE))};
+        final Block computeOnce = source.generated(new Block(0));
+        computeOnce.statements = new Statement[] {source.generated(new SynchronizedStatement(
+            source.generated(new ThisReference(source.pS, source.pE)), locked, source.pS, source.pE))};
+        final EqualExpression isNullUnlocked = source.generated(new EqualExpression(
+            source.generated(new SingleNameReference(name, source.p)),
+            source.generated(new NullLiteral(source.pS, source.pE)),
+            OperatorIds.EQUAL_EQUAL));
+        
+        method.statements = new Statement[] {
+            index,
+            source.generated(new IfStatement(isNullUnlocked, computeOnce, source.pS, source.pE)),
+            source.generated(new ReturnStatement(source.generated(new SingleNameReference(name, source.p)),
+                                                 source.pS,
+                                                 source.pE))};
+        injectMethod(typeNode, method);
+        // Generate the method access function, as for utility methods
+        return generateFunction(typeNode.getNodeFor(method), AccessLevel.PUBLIC, methodNode, source);
+    }
+    
+    /**
+     * Injects a getter for a member expanded from the given included field,
+     * which reads it from the included binding:
+     * <pre>
+     * public final R getMember()
+     * {
+     *     return this.included.getMember();
+     * }
+     * </pre>
+     */
+    private static MethodDeclaration injectDelegatingGetter(final EclipseNode typeNode,
+                                                           final char[] includedName,
+                                                           final AbstractVariableDeclaration variable,
+                                                           final Source source)
+    {
+        final boolean isBoolean = variable.type.dimensions() == 0
+            && "boolean".equals(toQualifiedName(variable.type.getTypeName()));
+        final char[] getterName = toGetterName(new String(variable.name), isBoolean).toCharArray();
+        
+        final MethodDeclaration method = source.generated(new MethodDeclaration(
+            ((CompilationUnitDeclaration)typeNode.top().get()).compilationResult));
+        method.modifiers = AccPublic | AccFinal;
+        method.returnType = source.copyType(variable.type, true);
+        method.selector = getterName;
+        method.bits |= Eclipse.ECLIPSE_DO_NOT_TOUCH_FLAG;
+        method.bodyStart = method.declarationSourceStart = method.sourceStart;
+        method.bodyEnd = method.declarationSourceEnd = method.sourceEnd;
+        
+        final MessageSend read = source.generated(new MessageSend());
+        read.receiver = createThisFieldReference(includedName, source);
+        read.selector = getterName;
+        method.statements = new Statement[] {source.generated(new ReturnStatement(read, source.pS, source.pE))};
+        injectMethod(typeNode, method);
+        return method;
+    }
+    
+    private static FieldReference createThisFieldReference(final char[] name, final Source source)
+    {
+        final FieldReference thisX = source.generated(new FieldReference(
+            ("this." + new String(name)).toCharArray(), source.p));
+        thisX.receiver = source.generated(new ThisReference(source.pS, source.pE));
+        thisX.token = name;
+        return thisX;
+    }
+
+    /**
+     * Generates <code>equals</code> and <code>hashCode</code> methods that
+     * delegate to the structural implementations in Binding, which memoize
+     * the hash code. Methods already declared by the schema are retained.
+     */
+    private static void generateEqualsAndHashCode(final EclipseNode typeNode, final Source source)
+    {
+        if (methodExists("equals", typeNode) == MemberExistsResult.NOT_EXISTS)
+        {
+            final TypeReference objectType = source.generated(new QualifiedTypeReference(TypeConstants.JAVA_LANG_OBJECT, source.p(3)));
+            final Argument other = source.generated(new Argument(OTHER_NAME, source.p, objectType, AccFinal));
+            injectMethod(typeNode, createDelegatingMethod(typeNode,
+                                                          TypeReference.baseTypeReference(TypeIds.T_boolean, 0),
+                                                          "equals",
+                                                          "bindingEquals",
+                                                          other,
+                                                          source));
+        }
+        if (methodExists("hashCode", typeNode) == MemberExistsResult.NOT_EXISTS)
+        {
+            injectMethod(typeNode, createDelegatingMethod(typeNode,
+                                                          TypeReference.baseTypeReference(TypeIds.T_int, 0),
+                                                          "hashCode",
+                                                          "bindingHashCode",
+                                                          null,
+                                                          source));
+        }
+    }
+
+    private static MethodDeclaration createDelegatingMethod(final EclipseNode typeNode,
+                                                            final TypeReference returnType,
+                                                            final String selector,
+                                                            final String delegate,
+                                                            final Argument argument,
+                                                            final Source source)
+    {
+        final MethodDeclaration method = source.generated(new MethodDeclaration(
+            ((CompilationUnitDeclaration)typeNode.top().get()).compilationResult));
+        method.modifiers = AccPublic;
+        method.returnType = source.generated(returnType);
+        method.selector = selector.toCharArray();
+        method.arguments = argument == null ? null : new Argument[] {argument};
+        method.bits |= Eclipse.ECLIPSE_DO_NOT_TOUCH_FLAG;
+        method.bodyStart = method.declarationSourceStart = method.sourceStart;
+        method.bodyEnd = method.declarationSourceEnd = method.sourceEnd;
+        
+        final MessageSend call = source.generated(new MessageSend());
+        call.receiver = source.generated(new ThisReference(source.pS, source.pE));
+        call.selector = delegate.toCharArray();
+        call.arguments = argument == null ? null
+            : new Expression[] {source.generated(new SingleNameReference(argument.name, source.p))};
+        method.statements = new Statement[] {source.generated(new ReturnStatement(call, source.pS, source.pE))};
+        return method;
+    }
+
+    /**
+     * Inserts a field after all existing fields, so that its initialiser may
+     * refer to any static field already generated.
+     */
+    private static void injectLastField(final EclipseNode typeNode, final FieldDeclaration field)
+    {
+        final TypeDeclaration type = (TypeDeclaration)typeNode.get();
+        if (type.fields == null)
+        {
+            type.fields = new FieldDeclaration[] {field};
+        }
+        else
+        {
+            final FieldDeclaration[] newArray = new FieldDeclaration[type.fields.length + 1];
+            System.arraycopy(type.fields, 0, newArray, 0, type.fields.length);
+            newArray[type.fields.length] = field;
+            type.fields = newArray;
+        }
+        typeNode.add(field, Kind.FIELD);
+    }
+
     private static FieldDeclaration injectSchemaField(final EclipseNode schemaNode,
                                                       final char[] name,
                                                       final TypeReference type,
@@ -475,6 +818,69 @@ public class HandleSchema extends EclipseAnnotationHandler<Schema>
         final Map<String, LocalDeclaration> initialisers = new HashMap<String, LocalDeclaration>();
         final List<FieldAssignment> fieldAssignments = new ArrayList<FieldAssignment>();
         final List<Statement> otherStatements = new ArrayList<Statement>();
+        final List<Statement> invariantStatements = new ArrayList<Statement>();
+        final List<Slot> slots = new ArrayList<Slot>();
+        final List<MethodDeclaration> invariants = new ArrayList<MethodDeclaration>();
+        final Map<String, MethodDeclaration> indexes = new HashMap<String, MethodDeclaration>();
+        final Map<String, Slot> delegated = new HashMap<String, Slot>();
+        final InvariableAnalysis invariableAnalysis;
+        
+        private class Slot
+        {
+            public final char[] fieldName;
+            public final char[] accessorName;
+            public final char[][] inclusion;
+            public final boolean mayContainInvariables;
+            public final TypeReference type;
+            /** The method through which the member is read, or null if read from its field */
+            public final char[] readMethod;
+            
+            public Slot(char[] fieldName,
+                        char[] accessorName,
+                        char[][] inclusion,
+                        boolean mayContainInvariables,
+                        TypeReference type,
+                        char[] readMethod)
+            {
+                this.fieldName = fieldName;
+                this.accessorName = accessorName;
+                this.inclusion = inclusion;
+                this.mayContainInvariables = mayContainInvariables;
+                this.type = type;
+                this.readMethod = readMethod;
+            }
+            
+            /**
+             * Returns the primitive type name of the member, or
+             * <code>null</code> if it is an object.
+             */
+            public String primitiveName()
+            {
+                final String name = toQualifiedName(type.getTypeName());
+                return type.dimensions() == 0 && PRIMITIVE_TYPES.contains(name) ? name : null;
+            }
+            
+            /**
+             * Creates an expression reading the member of the given
+             * binding, or this binding if <code>null</code>.
+             */
+            public Expression createRead(final char[] bindingName)
+            {
+                final Expression receiver = bindingName == null
+                    ? source.generated(new ThisReference(source.pS, source.pE))
+                    : createNameReference(bindingName);
+                if (readMethod != null)
+                {
+                    final MessageSend call = source.generated(new MessageSend());
+                    call.receiver = receiver;
+                    call.selector = readMethod;
+                    return call;
+                }
+                final FieldReference read = source.generated(new FieldReference(fieldName, source.p));
+                read.receiver = receiver;
+                return read;
+            }
+        }
         
         private class FieldAssignment
         {
@@ -484,7 +890,7 @@ public class HandleSchema extends EclipseAnnotationHandler<Schema>
             
             public FieldAssignment(FieldDeclaration field)
             {
-                this(field.name, createNameReference(field.name), singletonList(createArgument(field)));
+                this(field.name, createFrozenValue(field), singletonList(createArgument(field)));
             }
             
             public FieldAssignment(char[] fieldName, Expression value, Collection<Argument> requiredArguments)
@@ -502,6 +908,7 @@ public class HandleSchema extends EclipseAnnotationHandler<Schema>
         {
             this.type = type;
             this.source = source;
+            this.invariableAnalysis = new InvariableAnalysis(type);
         }
 
         public ConstructorDeclaration build()
@@ -512,7 +919,8 @@ public class HandleSchema extends EclipseAnnotationHandler<Schema>
             constructor.modifiers = toEclipseModifier(AccessLevel.PUBLIC);
             constructor.annotations = null;
             constructor.selector = ((TypeDeclaration)type.get()).name;
-            constructor.constructorCall = source.generated(new ExplicitConstructorCall(ExplicitConstructorCall.ImplicitSuper));
+            constructor.constructorCall = source.generated(new ExplicitConstructorCall(ExplicitConstructorCall.Super));
+            constructor.constructorCall.arguments = new Expression[] {createNameReference(BINDING_CLASS_NAME)};
             constructor.thrownExceptions = null;
             constructor.typeParameters = null;
             constructor.bits |= Eclipse.ECLIPSE_DO_NOT_TOUCH_FLAG;
@@ -543,16 +951,388 @@ public class HandleSchema extends EclipseAnnotationHandler<Schema>
                 stmts.add(assignment.statement);
             }
             stmts.addAll(otherStatements);
+            if (!invariantStatements.isEmpty())
+            {
+                final UnaryExpression notDeferred = source.generated(new UnaryExpression(
+                    createThisCall("deferInvariants"), OperatorIds.NOT));
+                stmts.add(source.generated(new IfStatement(notDeferred,
+                                                           createThisCall("evaluateInvariants"),
+                                                           source.pS,
+                                                           source.pE)));
+            }
             
             constructor.statements = stmts.isEmpty() ? null : stmts.toArray(new Statement[stmts.size()]);
             constructor.arguments = args.isEmpty() ? null : args.values().toArray(new Argument[args.size()]);
             return constructor;
         }
 
+        /**
+         * Builds the method evaluating the invariants, which the constructor
+         * calls unless deferred:
+         * <pre>
+         * protected void evaluateInvariants()
+         * {
+         *     if (!this.heldBefore(0) && !this.invariant()) this.addViolation(0);
+         *     ...
+         * }
+         * </pre>
+         */
+        public MethodDeclaration buildEvaluateInvariants()
+        {
+            final MethodDeclaration method = source.generated(new MethodDeclaration(
+                ((CompilationUnitDeclaration)type.top().get()).compilationResult));
+            method.modifiers = AccProtected;
+            method.returnType = source.generated(TypeReference.baseTypeReference(TypeIds.T_void, 0));
+            method.selector = "evaluateInvariants".toCharArray();
+            method.bits |= Eclipse.ECLIPSE_DO_NOT_TOUCH_FLAG;
+            method.bodyStart = method.declarationSourceStart = method.sourceStart;
+            method.bodyEnd = method.declarationSourceEnd = method.sourceEnd;
+            method.statements = invariantStatements.toArray(new Statement[invariantStatements.size()]);
+            return method;
+        }
+        
+        /**
+         * Builds a static factory taking the same arguments as the given
+         * constructor, which defers evaluating invariants until checked:
+         * <pre>
+         * public static S deferred(final A a, ...)
+         * {
+         *     final boolean $deferring = setDeferring(true);
+         *     try
+         *     {
+         *         return new S(a, ...);
+         *     }
+         *     finally
+         *     {
+         *         setDeferring($deferring);
+         *     }
+         * }
+         * </pre>
+         */
+        public MethodDeclaration buildDeferredFactory(final ConstructorDeclaration constructor)
+        {
+            final char[] typeName = ((TypeDeclaration)type.get()).name;
+            final MethodDeclaration method = source.generated(new MethodDeclaration(
+                ((CompilationUnitDeclaration)type.top().get()).compilationResult));
+            method.modifiers = AccPublic | AccStatic;
+            method.returnType = source.generated(new SingleTypeReference(typeName, source.p));
+            method.selector = "deferred".toCharArray();
+            method.bits |= Eclipse.ECLIPSE_DO_NOT_TOUCH_FLAG;
+            method.bodyStart = method.declarationSourceStart = method.sourceStart;
+            method.bodyEnd = method.declarationSourceEnd = method.sourceEnd;
+            
+            final AllocationExpression constructed = source.generated(new AllocationExpression());
+            constructed.type = source.generated(new SingleTypeReference(typeName, source.p));
+            if (constructor.arguments != null)
+            {
+                method.arguments = new Argument[constructor.arguments.length];
+                constructed.arguments = new Expression[constructor.arguments.length];
+                for (int i = 0; i < constructor.arguments.length; i++)
+                {
+                    method.arguments[i] = createArgument(constructor.arguments[i]);
+                    constructed.arguments[i] = createNameReference(constructor.arguments[i].name);
+                }
+            }
+            
+            final LocalDeclaration deferring = source.generated(new LocalDeclaration(DEFERRING_NAME, source.pS, source.pE));
+            deferring.type = source.generated(TypeReference.baseTypeReference(TypeIds.T_boolean, 0));
+            deferring.modifiers |= AccFinal;
+            deferring.initialization = createStaticCall("setDeferring", source.generated(new TrueLiteral(source.pS, source.pE)));
+            
+            final TryStatement tryConstruct = source.generated(new TryStatement());
+            tryConstruct.tryBlock = source.generated(new Block(0));
+            tryConstruct.tryBlock.statements = new Statement[] {
+                source.generated(new ReturnStatement(constructed, source.pS, source.pE))};
+            tryConstruct.finallyBlock = source.generated(new Block(0));
+            tryConstruct.finallyBlock.statements = new Statement[] {
+                createStaticCall("setDeferring", createNameReference(DEFERRING_NAME))};
+            
+            method.statements = new Statement[] {deferring, tryConstruct};
+            return method;
+        }
+        
+        public boolean hasPrimitiveSlots()
+        {
+            for (Slot slot : slots)
+            {
+                if (slot.primitiveName() != null)
+                    return true;
+            }
+            return false;
+        }
+        
+        /**
+         * Builds the method reading members by slot, in the order of the
+         * binding table:
+         * <pre>
+         * protected Object get(final int slot)
+         * {
+         *     switch (slot)
+         *     {
+         *     case 0: return this.field;
+         *     ...
+         *     default: return super.get(slot);
+         *     }
+         * }
+         * </pre>
+         */
+        public MethodDeclaration buildGet()
+        {
+            final List<Statement> cases = new ArrayList<Statement>();
+            for (int i = 0; i < slots.size(); i++)
+            {
+                cases.add(source.generated(new CaseStatement(createIntLiteral(i), source.pE, source.pS)));
+                cases.add(source.generated(new ReturnStatement(slots.get(i).createRead(null), source.pS, source.pE)));
+            }
+            return createSlotMethod(source.generated(new QualifiedTypeReference(TypeConstants.JAVA_LANG_OBJECT, source.p(3))),
+                                    "get",
+                                    null,
+                                    cases);
+        }
+        
+        /**
+         * Builds the method comparing primitive members by slot, without
+         * boxing:
+         * <pre>
+         * protected boolean slotEquals(final int slot, final S other)
+         * {
+         *     switch (slot)
+         *     {
+         *     case 0: return this.field == other.field;
+         *     ...
+         *     default: return super.slotEquals(slot, other);
+         *     }
+         * }
+         * </pre>
+         * Floating point members are compared as objects, as are all others.
+         */
+        public MethodDeclaration buildSlotEquals()
+        {
+            final List<Statement> cases = new ArrayList<Statement>();
+            for (int i = 0; i < slots.size(); i++)
+            {
+                final String primitive = slots.get(i).primitiveName();
+                if (primitive != null && !primitive.equals("float") && !primitive.equals("double"))
+                {
+                    cases.add(source.generated(new CaseStatement(createIntLiteral(i), source.pE, source.pS)));
+                    final EqualExpression equal = source.generated(new EqualExpression(slots.get(i).createRead(null),
+                                                                                       slots.get(i).createRead(OTHER_NAME),
+                                                                                       OperatorIds.EQUAL_EQUAL));
+                    cases.add(source.generated(new ReturnStatement(equal, source.pS, source.pE)));
+                }
+            }
+            final Argument other = source.generated(new Argument(OTHER_NAME,
+                                                                 source.p,
+                                                                 source.generated(new SingleTypeReference(((TypeDeclaration)type.get()).name, source.p)),
+                                                                 AccFinal));
+            return createSlotMethod(TypeReference.baseTypeReference(TypeIds.T_boolean, 0), "slotEquals", other, cases);
+        }
+        
+        /**
+         * Builds the method hashing primitive members by slot as their
+         * wrappers would, without boxing:
+         * <pre>
+         * protected int slotHashCode(final int slot)
+         * {
+         *     switch (slot)
+         *     {
+         *     case 0: return this.intField;
+         *     case 1: return this.booleanField ? 1231 : 1237;
+         *     case 2: return (int)(this.longField ^ this.longField >>> 32);
+         *     ...
+         *     default: return super.slotHashCode(slot);
+         *     }
+         * }
+         * </pre>
+         * Floating point members are hashed as objects, as are all others.
+         */
+        public MethodDeclaration buildSlotHashCode()
+        {
+            final List<Statement> cases = new ArrayList<Statement>();
+            for (int i = 0; i < slots.size(); i++)
+            {
+                final Slot slot = slots.get(i);
+                final String primitive = slot.primitiveName();
+                final Expression hash;
+                if (primitive == null || primitive.equals("float") || primitive.equals("double"))
+                {
+                    continue;
+                }
+                else if (primitive.equals("boolean"))
+                {
+                    hash = source.generated(new ConditionalExpression(slot.createRead(null),
+                                                                      createIntLiteral(1231),
+                                                                      createIntLiteral(1237)));
+                }
+                else if (primitive.equals("long"))
+                {
+                    final BinaryExpression shifted = source.generated(new BinaryExpression(
+                        slot.createRead(null), createIntLiteral(32), OperatorIds.UNSIGNED_RIGHT_SHIFT));
+                    final BinaryExpression folded = source.generated(new BinaryExpression(
+                        slot.createRead(null), shifted, OperatorIds.XOR));
+                    hash = source.generated(new CastExpression(folded,
+                        source.generated(TypeReference.baseTypeReference(TypeIds.T_int, 0))));
+                }
+                else
+                {
+                    // Other integral types hash to their value
+                    hash = slot.createRead(null);
+                }
+                cases.add(source.generated(new CaseStatement(createIntLiteral(i), source.pE, source.pS)));
+                cases.add(source.generated(new ReturnStatement(hash, source.pS, source.pE)));
+            }
+            return createSlotMethod(TypeReference.baseTypeReference(TypeIds.T_int, 0), "slotHashCode", null, cases);
+        }
+        
+        /**
+         * Creates a method overriding the given Binding method, switching on
+         * the slot over the given cases and otherwise calling the overridden
+         * method.
+         */
+        private MethodDeclaration createSlotMethod(final TypeReference returnType,
+                                                   final String selector,
+                                                   final Argument other,
+                                                   final List<Statement> cases)
+        {
+            final MethodDeclaration method = source.generated(new MethodDeclaration(
+                ((CompilationUnitDeclaration)type.top().get()).compilationResult));
+            method.modifiers = AccProtected;
+            method.returnType = source.generated(returnType);
+            method.selector = selector.toCharArray();
+            final Argument slot = source.generated(new Argument(SLOT_NAME,
+                                                                source.p,
+                                                                source.generated(TypeReference.baseTypeReference(TypeIds.T_int, 0)),
+                                                                AccFinal));
+            method.arguments = other == null ? new Argument[] {slot} : new Argument[] {slot, other};
+            method.bits |= Eclipse.ECLIPSE_DO_NOT_TOUCH_FLAG;
+            method.bodyStart = method.declarationSourceStart = method.sourceStart;
+            method.bodyEnd = method.declarationSourceEnd = method.sourceEnd;
+            
+            final MessageSend overridden = source.generated(new MessageSend());
+            overridden.receiver = source.generated(new SuperReference(source.pS, source.pE));
+            overridden.selector = method.selector;
+            overridden.arguments = other == null
+                ? new Expression[] {createNameReference(SLOT_NAME)}
+                : new Expression[] {createNameReference(SLOT_NAME), createNameReference(OTHER_NAME)};
+            
+            final SwitchStatement switchSlot = source.generated(new SwitchStatement());
+            switchSlot.expression = createNameReference(SLOT_NAME);
+            final List<Statement> statements = new ArrayList<Statement>(cases);
+            statements.add(source.generated(new CaseStatement(null, source.pE, source.pS)));
+            statements.add(source.generated(new ReturnStatement(overridden, source.pS, source.pE)));
+            switchSlot.statements = statements.toArray(new Statement[statements.size()]);
+            switchSlot.sourceStart = source.pS;
+            switchSlot.sourceEnd = source.pE;
+            method.statements = new Statement[] {switchSlot};
+            return method;
+        }
+        
+        /**
+         * Builds the static field holding the class-wide binding table, which is
+         * passed to the Binding constructor. For a schema class <code>S</code>:
+         * <pre>
+         * private static final BindingClass&lt;S&gt; $bindingClass =
+         *     BindingClass.of(S.class).add("field", getField, Inclusion.DIRECT, true)...
+         *                             .invariants("invariant", ...)
+         *                             .dependencies(0x1L, ...);
+         * </pre>
+         * The dependencies are the bitmasks of the slots read by each
+         * invariant, declared for tables of at most 64 slots.
+         */
+        public FieldDeclaration buildBindingClass()
+        {
+            final char[] typeName = ((TypeDeclaration)type.get()).name;
+            final TypeReference[][] typeArguments = new TypeReference[ORG_JSIZZLE_BINDINGCLASS.length][];
+            typeArguments[ORG_JSIZZLE_BINDINGCLASS.length - 1] =
+                new TypeReference[] {source.generated(new SingleTypeReference(typeName, source.p))};
+            
+            final FieldDeclaration field = source.generated(new FieldDeclaration(BINDING_CLASS_NAME, source.pS, source.pE));
+            field.declarationSourceStart = field.sourceStart;
+            field.declarationEnd = field.declarationSourceEnd = field.sourceEnd;
+            field.modifiers = AccPrivate | AccStatic | AccFinal;
+            field.type = source.generated(new ParameterizedQualifiedTypeReference(
+                ORG_JSIZZLE_BINDINGCLASS, typeArguments, 0, source.p(ORG_JSIZZLE_BINDINGCLASS.length)));
+            
+            final MessageSend of = source.generated(new MessageSend());
+            of.receiver = createQualifiedNameReference(ORG_JSIZZLE_BINDINGCLASS);
+            of.selector = "of".toCharArray();
+            of.arguments = new Expression[] {createClassLiteral()};
+            
+            Expression table = of;
+            for (Slot slot : slots)
+            {
+                final MessageSend add = source.generated(new MessageSend());
+                add.receiver = table;
+                add.selector = "add".toCharArray();
+                add.arguments = new Expression[] {
+                    source.generated(new StringLiteral(slot.fieldName, source.pS, source.pE, 0)),
+                    createNameReference(slot.accessorName),
+                    source.generated(new QualifiedNameReference(slot.inclusion,
+                                                                source.p(slot.inclusion.length),
+                                                                source.pS,
+                                                                source.pE)),
+                    slot.mayContainInvariables
+                        ? source.generated(new TrueLiteral(source.pS, source.pE))
+                        : source.generated(new FalseLiteral(source.pS, source.pE))};
+                table = add;
+            }
+            final MessageSend declareInvariants = source.generated(new MessageSend());
+            declareInvariants.receiver = table;
+            declareInvariants.selector = "invariants".toCharArray();
+            if (!invariants.isEmpty())
+                declareInvariants.arguments = createInvariantNames(0);
+            field.initialization = declareInvariants;
+            
+            if (!invariants.isEmpty() && slots.size() <= Long.SIZE)
+            {
+                final DependencyAnalysis dependencyAnalysis =
+                    new DependencyAnalysis((CompilationUnitDeclaration)type.top().get(), (TypeDeclaration)type.get(), indexes);
+                final MessageSend declareDependencies = source.generated(new MessageSend());
+                declareDependencies.receiver = declareInvariants;
+                declareDependencies.selector = "dependencies".toCharArray();
+                declareDependencies.arguments = new Expression[invariants.size()];
+                for (int i = 0; i < invariants.size(); i++)
+                {
+                    final long mask = slotMask(dependencyAnalysis.analyse(invariants.get(i)));
+                    declareDependencies.arguments[i] = source.generated(LongLiteral.buildLongLiteral(
+                        ("0x" + Long.toHexString(mask) + "L").toCharArray(), source.pS, source.pE));
+                }
+                field.initialization = declareDependencies;
+            }
+            return field;
+        }
+
+        /**
+         * Builds the static field holding the invariant metrics, when compiled
+         * with <code>org.jsizzle.metrics</code>:
+         * <pre>
+         * private static final InvariantMetrics $invariantMetrics =
+         *     InvariantMetrics.register(S.class, "invariant", ...);
+         * </pre>
+         */
+        public FieldDeclaration buildInvariantMetrics()
+        {
+            final FieldDeclaration field = source.generated(new FieldDeclaration(INVARIANT_METRICS_NAME, source.pS, source.pE));
+            field.declarationSourceStart = field.sourceStart;
+            field.declarationEnd = field.declarationSourceEnd = field.sourceEnd;
+            field.modifiers = AccPrivate | AccStatic | AccFinal;
+            field.type = source.generated(new QualifiedTypeReference(ORG_JSIZZLE_INVARIANTMETRICS,
+                                                                     source.p(ORG_JSIZZLE_INVARIANTMETRICS.length)));
+            
+            final MessageSend register = source.generated(new MessageSend());
+            register.receiver = createQualifiedNameReference(ORG_JSIZZLE_INVARIANTMETRICS);
+            register.selector = "register".toCharArray();
+            register.arguments = createInvariantNames(1);
+            register.arguments[0] = createClassLiteral();
+            field.initialization = register;
+            return field;
+        }
+
         public void addDirectField(final EmbellishedSchemaField field)
         {
             addDirectField(field.decl);
-            addFieldAccessor(field.accessorName, INCLUSION_DIRECT);
+            addFieldAccessor(field.decl.name, field.accessorName, INCLUSION_DIRECT,
+                             invariableAnalysis.mayContainInvariables(field.decl.type), field.decl.type, null);
         }
 
         public void addDirectField(final FieldDeclaration field)
@@ -564,6 +1344,12 @@ public class HandleSchema extends EclipseAnnotationHandler<Schema>
                 otherStatements.add(nullCheck);
         }
 
+        public void addIdentityField(final FieldDeclaration field, final char[] accessorName)
+        {
+            addDirectField(field);
+            addFieldAccessor(field.name, accessorName, INCLUSION_IDENTITY, false, field.type, null);
+        }
+
         public void addIncludedField(final EmbellishedSchemaField field,
                                      final ConstructorDeclaration includeCons)
         {
@@ -584,6 +1370,11 @@ public class HandleSchema extends EclipseAnnotationHandler<Schema>
                         // If the field already exists (hiding), then use its value.
                         constructed.arguments[i] = createFieldReference(includeCons.arguments[i].name);
                     }
+                    else if (isDelegated(includeCons.arguments[i].name))
+                    {
+                        // Likewise if delegated to a previous inclusion
+                        constructed.arguments[i] = delegated.get(new String(includeCons.arguments[i].name)).createRead(null);
+                    }
                     else
                     {
                         // Otherwise demand an argument.
@@ -593,7 +1384,8 @@ public class HandleSchema extends EclipseAnnotationHandler<Schema>
                 }
             }
             fieldAssignments.add(new FieldAssignment(field.decl.name, constructed, requiredArguments));
-            addFieldAccessor(field.accessorName, INCLUSION_INCLUDED);
+            addFieldAccessor(field.decl.name, field.accessorName, INCLUSION_INCLUDED,
+                             invariableAnalysis.mayContainInvariables(field.decl.type), field.decl.type, null);
         }
 
         public void addExpandedField(EmbellishedSchemaField field,
@@ -617,9 +1409,29 @@ public class HandleSchema extends EclipseAnnotationHandler<Schema>
                 copyFrom.token = field.decl.name;
                 fieldAssignments.add(new FieldAssignment(field.decl.name, copyFrom, noArgs));
             }
-            addFieldAccessor(field.accessorName, INCLUSION_EXPANDED);
+            // Expanded data is checked in the included binding
+            addFieldAccessor(field.decl.name, field.accessorName, INCLUSION_EXPANDED, false, field.decl.type, null);
         }
 
+        /**
+         * Adds an expanded member that is read through the given getter,
+         * delegating to the included field.
+         */
+        public void addDelegatedField(final AbstractVariableDeclaration variable,
+                                      final char[] getterName,
+                                      final char[] accessorName,
+                                      final FieldDeclaration includedField)
+        {
+            // Expanded data is checked in the included binding
+            addFieldAccessor(variable.name, accessorName, INCLUSION_EXPANDED, false, variable.type, getterName);
+            delegated.put(new String(variable.name), slots.get(slots.size() - 1));
+        }
+        
+        public boolean isDelegated(final char[] fieldName)
+        {
+            return delegated.containsKey(new String(fieldName));
+        }
+        
         public void addInitialiser(final String fieldName, final MethodDeclaration method)
         {
             final LocalDeclaration declaration = source.generated(new LocalDeclaration(fieldName.toCharArray(), source.pS, source.pE));
@@ -631,9 +1443,36 @@ public class HandleSchema extends EclipseAnnotationHandler<Schema>
         
         public void addInvariant(final MethodDeclaration method)
         {
-            final Expression callInvariant = createThisCall(new String(method.selector));
+            final Expression callInvariant = metrics
+                ? createRecordInvariant(invariants.size(), createThisCall(new String(method.selector)))
+                : createThisCall(new String(method.selector));
+            final UnaryExpression notHeldBefore = source.generated(new UnaryExpression(
+                createThisCall("heldBefore", createIntLiteral(invariants.size())), OperatorIds.NOT));
             final UnaryExpression notInvariant = source.generated(new UnaryExpression(callInvariant, OperatorIds.NOT));
-            otherStatements.add(source.generated(new IfStatement(notInvariant, createAddViolation(method), source.pS, source.pE)));
+            final AND_AND_Expression violated = source.generated(new AND_AND_Expression(notHeldBefore, notInvariant, OperatorIds.AND_AND));
+            invariantStatements.add(source.generated(new IfStatement(violated, createAddViolation(invariants.size()), source.pS, source.pE)));
+            invariants.add(method);
+        }
+        
+        /**
+         * Adds an index, given its renamed computation method, so that
+         * invariants calling it depend on the members the computation
+         * reads.
+         */
+        public void addIndex(final MethodDeclaration compute)
+        {
+            indexes.put(new String(compute.selector).substring("$compute$".length()), compute);
+        }
+        
+        /**
+         * Adds the slot of a lazy initialiser, whose value is read through
+         * its cached accessor method rather than a field.
+         */
+        public void addLazyField(final String fieldName, final char[] accessorName, final TypeReference type)
+        {
+            // Lazy members are derived, so not data, but compared and checked like others
+            addFieldAccessor(fieldName.toCharArray(), accessorName, INCLUSION_LAZY,
+                             invariableAnalysis.mayContainInvariables(type), type, fieldName.toCharArray());
         }
         
         public boolean hasFields()
@@ -641,6 +1480,35 @@ public class HandleSchema extends EclipseAnnotationHandler<Schema>
             return !fieldAssignments.isEmpty();
         }
         
+        public boolean hasInvariants()
+        {
+            return !invariants.isEmpty();
+        }
+        
+        /**
+         * Returns the bitmask of the slots of the given fields, or -1 if
+         * not known or if any of them has no slot.
+         */
+        private long slotMask(final Set<String> fieldNames)
+        {
+            if (fieldNames == null)
+                return -1;
+            long mask = 0;
+            for (String fieldName : fieldNames)
+            {
+                long fieldMask = 0;
+                for (int i = 0; i < slots.size(); i++)
+                {
+                    if (fieldName.equals(new String(slots.get(i).fieldName)))
+                        fieldMask |= 1L << i;
+                }
+                if (fieldMask == 0)
+                    return -1;
+                mask |= fieldMask;
+            }
+            return mask;
+        }
+        
         private int findFieldAssignment(char[] fieldName)
         {
             for (int i = 0; i < fieldAssignments.size(); i++)
@@ -651,25 +1519,99 @@ public class HandleSchema extends EclipseAnnotationHandler<Schema>
             return -1;
         }
 
-        private void addFieldAccessor(final char[] accessorName, final char[][] inclusion)
+        private void addFieldAccessor(final char[] fieldName,
+                                      final char[] accessorName,
+                                      final char[][] inclusion,
+                                      final boolean mayContainInvariables,
+                                      final TypeReference type,
+                                      final char[] readMethod)
         {
             if (accessorName != null)
-                otherStatements.add(createAddAccessor(accessorName, inclusion));
+                slots.add(new Slot(fieldName, accessorName, inclusion, mayContainInvariables, type, readMethod));
         }
 
-        private Statement createAddViolation(final AbstractMethodDeclaration method)
+        /**
+         * Creates the value assigned to a field from its argument, which is
+         * frozen if a collection, so the binding does not share it with the
+         * caller:
+         * <pre>
+         * org.jsizzle.Bindings.freeze(x)
+         * </pre>
+         */
+        private Expression createFrozenValue(final FieldDeclaration field)
         {
-            return createThisCall("addViolation", new StringLiteral(method.selector, source.pS, source.pE, 0));
+            if (field.type.dimensions() > 0 || !FROZEN_TYPES.contains(toQualifiedName(field.type.getTypeName())))
+                return createNameReference(field.name);
+            final MessageSend freeze = source.generated(new MessageSend());
+            freeze.receiver = createQualifiedNameReference(ORG_JSIZZLE_BINDINGS);
+            freeze.selector = "freeze".toCharArray();
+            freeze.arguments = new Expression[] {createNameReference(field.name)};
+            return freeze;
         }
 
-        private Statement createAddAccessor(char[] accessorName, char[][] inclusion)
+        private Statement createAddViolation(final int index)
         {
-            final Expression accessorReference = source.generated(new SingleNameReference(accessorName, source.p));
-            final Expression inclusionReference = source.generated(new QualifiedNameReference(inclusion,
-                                                                                              source.p(inclusion.length),
-                                                                                              source.pS,
-                                                                                              source.pE));
-            return createThisCall("addAccessor", accessorReference, inclusionReference);
+            return createThisCall("addViolation", createIntLiteral(index));
+        }
+
+        /**
+         * Wraps an invariant call to record it in the invariant metrics:
+         * <pre>
+         * InvariantMetrics.record($invariantMetrics, index, System.nanoTime(), this.invariant())
+         * </pre>
+         */
+        private Expression createRecordInvariant(final int index, final Expression callInvariant)
+        {
+            final MessageSend nanoTime = source.generated(new MessageSend());
+            nanoTime.receiver = createQualifiedNameReference(JAVA_LANG_SYSTEM);
+            nanoTime.selector = "nanoTime".toCharArray();
+            
+            final MessageSend record = source.generated(new MessageSend());
+            record.receiver = createQualifiedNameReference(ORG_JSIZZLE_INVARIANTMETRICS);
+            record.selector = "record".toCharArray();
+            record.arguments = new Expression[] {
+                createNameReference(INVARIANT_METRICS_NAME),
+                createIntLiteral(index),
+                nanoTime,
+                callInvariant};
+            return record;
+        }
+        
+        /**
+         * Creates string literals of the invariant names, after the given
+         * number of leading array elements.
+         */
+        private Expression[] createInvariantNames(final int offset)
+        {
+            final Expression[] names = new Expression[offset + invariants.size()];
+            for (int i = 0; i < invariants.size(); i++)
+                names[offset + i] = source.generated(new StringLiteral(invariants.get(i).selector, source.pS, source.pE, 0));
+            return names;
+        }
+        
+        private IntLiteral createIntLiteral(final int value)
+        {
+            return source.generated(IntLiteral.buildIntLiteral(Integer.toString(value).toCharArray(), source.pS, source.pE));
+        }
+        
+        private ClassLiteralAccess createClassLiteral()
+        {
+            return source.generated(new ClassLiteralAccess(source.pE,
+                source.generated(new SingleTypeReference(((TypeDeclaration)type.get()).name, source.p))));
+        }
+        
+        private QualifiedNameReference createQualifiedNameReference(final char[][] name)
+        {
+            return source.generated(new QualifiedNameReference(name, source.p(name.length), source.pS, source.pE));
+        }
+
+        private Expression createStaticCall(String methodName, Expression... arguments)
+        {
+            final MessageSend methodCall = source.generated(new MessageSend());
+            methodCall.receiver = source.generated(ThisReference.implicitThis());
+            methodCall.selector = methodName.toCharArray();
+            methodCall.arguments = arguments.length == 0 ? null : arguments;
+            return methodCall;
         }
 
         private Expression createThisCall(String methodName, Expression... arguments)
@@ -704,6 +1646,314 @@ public class HandleSchema extends EclipseAnnotationHandler<Schema>
         }
     }
     
+    /**
+     * Determines from declared types whether values of a schema member may
+     * contain invariables, that is, whether the member must be walked when
+     * checking a binding's invariant. The answer is <code>false</code> only
+     * for primitives, strings and boxed types, local enumerations, local
+     * schemas that trivially satisfy their invariant, and arrays and standard
+     * collections of these. Anything unknown may contain invariables.
+     */
+    private static class InvariableAnalysis
+    {
+        private static final Set<String> FREE_TYPES = new HashSet<String>(asList(
+            "boolean", "byte", "char", "short", "int", "long", "float", "double",
+            "String", "Boolean", "Byte", "Character", "Short", "Integer", "Long", "Float", "Double"));
+        private static final Set<String> COLLECTION_TYPES = new HashSet<String>(asList(
+            "Iterable", "Collection", "Set", "SortedSet", "NavigableSet", "List", "Queue", "Deque",
+            "Map", "SortedMap", "NavigableMap", "Map.Entry", "Entry",
+            "HashSet", "LinkedHashSet", "TreeSet", "EnumSet", "ArrayList", "LinkedList",
+            "HashMap", "LinkedHashMap", "TreeMap", "EnumMap"));
+        
+        private final EclipseNode typeNode;
+        private final CompilationUnitDeclaration compilationUnit;
+        private final Map<TypeDeclaration, Boolean> localTypes = new HashMap<TypeDeclaration, Boolean>();
+        
+        public InvariableAnalysis(EclipseNode typeNode)
+        {
+            this.typeNode = typeNode;
+            this.compilationUnit = (CompilationUnitDeclaration)typeNode.top().get();
+        }
+        
+        public boolean mayContainInvariables(TypeReference type)
+        {
+            return mayContainInvariables(type, (TypeDeclaration)typeNode.get());
+        }
+        
+        private boolean mayContainInvariables(TypeReference type, TypeDeclaration scope)
+        {
+            if (type instanceof Wildcard)
+            {
+                final Wildcard wildcard = (Wildcard)type;
+                return wildcard.kind != Wildcard.EXTENDS || mayContainInvariables(wildcard.bound, scope);
+            }
+            
+            // Arrays are walked like lists, so only the element type matters
+            final TypeReference[] typeArguments = typeArguments(type);
+            final TypeDeclaration localType = findLocalType(compilationUnit, scope, type.getTypeName());
+            if (localType != null)
+                return typeArguments != null || mayContainInvariables(localType);
+            
+            final String name = toQualifiedName(type.getTypeName()).replaceFirst("^java\\.(lang|util)\\.", "");
+            if (FREE_TYPES.contains(name))
+                return false;
+            if (COLLECTION_TYPES.contains(name) && typeArguments != null)
+            {
+                for (TypeReference typeArgument : typeArguments)
+                {
+                    if (mayContainInvariables(typeArgument, scope))
+                        return true;
+                }
+                return false;
+            }
+            return true;
+        }
+        
+        private boolean mayContainInvariables(TypeDeclaration type)
+        {
+            final Boolean known = localTypes.get(type);
+            if (known != null)
+                return known;
+            
+            // Recursive types are conservatively assumed to contain invariables
+            localTypes.put(type, true);
+            final boolean result = localTypeMayContainInvariables(type);
+            localTypes.put(type, result);
+            return result;
+        }
+        
+        private boolean localTypeMayContainInvariables(TypeDeclaration type)
+        {
+            final EclipseNode node = typeNode.getNodeFor(type);
+            if (node == null || (type.modifiers & (AccInterface | AccAnnotation)) != 0)
+                return true;
+            if ((type.modifiers & AccEnum) != 0)
+                return type.superInterfaces != null;
+            if ((type.superclass != null && getGeneratedBy(type.superclass) == null)
+                    || type.typeParameters != null
+                    || findAnnotation(node, Disjoint.class) != null)
+                return true;
+            
+            for (EclipseNode child : node.down())
+            {
+                if (child.getKind() == Kind.FIELD)
+                {
+                    // Generated fields are identities, or derive from included or initialised members
+                    final FieldDeclaration field = (FieldDeclaration)child.get();
+                    if ((field.modifiers & AccStatic) == 0
+                            && getGeneratedBy(field) == null
+                            && mayContainInvariables(field.type, type))
+                        return true;
+                }
+                else if (child.getKind() == Kind.METHOD && child.get() instanceof MethodDeclaration)
+                {
+                    final MethodDeclaration method = (MethodDeclaration)child.get();
+                    if (findAnnotation(child, Invariant.class) != null)
+                        return true;
+                    if (findAnnotation(child, Initialise.class) != null
+                            && mayContainInvariables(method.returnType, type))
+                        return true;
+                }
+            }
+            return false;
+        }
+        
+        private static TypeReference[] typeArguments(TypeReference type)
+        {
+            if (type instanceof ParameterizedSingleTypeReference)
+            {
+                return ((ParameterizedSingleTypeReference)type).typeArguments;
+            }
+            else if (type instanceof ParameterizedQualifiedTypeReference)
+            {
+                final List<TypeReference> typeArguments = new ArrayList<TypeReference>();
+                for (TypeReference[] qualifierArguments : ((ParameterizedQualifiedTypeReference)type).typeArguments)
+                {
+                    if (qualifierArguments != null)
+                        typeArguments.addAll(asList(qualifierArguments));
+                }
+                return typeArguments.toArray(new TypeReference[typeArguments.size()]);
+            }
+            return null;
+        }
+    }
+    
+    /**
+     * Determines the fields read by an invariant method, so that the
+     * invariant need not be evaluated again for a binding whose values of
+     * those fields are unchanged. Unqualified names and <code>this</code>
+     * references of instance fields are dependencies, as are those of the
+     * schema's own methods and indexes that an invariant calls. Any other
+     * use of <code>this</code>, or call of a generated or inherited method,
+     * makes the dependencies unknown, as the method may read anything.
+     * Unqualified calls are only taken to be of static methods if they are
+     * explicitly statically imported.
+     */
+    private static class DependencyAnalysis extends ASTVisitor
+    {
+        private final Set<String> fieldNames = new HashSet<String>();
+        private final Map<String, List<MethodDeclaration>> methods = new HashMap<String, List<MethodDeclaration>>();
+        private final Set<String> staticImports = new HashSet<String>();
+        private final Set<String> dependencies = new HashSet<String>();
+        private final Set<MethodDeclaration> analysing = new HashSet<MethodDeclaration>();
+        private boolean unknown;
+        
+        public DependencyAnalysis(CompilationUnitDeclaration unit,
+                                  TypeDeclaration type,
+                                  Map<String, MethodDeclaration> indexes)
+        {
+            if (unit.imports != null)
+            {
+                for (ImportReference importReference : unit.imports)
+                {
+                    // On-demand imports cannot be resolved here, so do not count
+                    if (importReference.isStatic() && (importReference.bits & ASTNode.OnDemand) == 0)
+                        staticImports.add(new String(importReference.tokens[importReference.tokens.length - 1]));
+                }
+            }
+            if (type.fields != null)
+            {
+                for (FieldDeclaration field : type.fields)
+                {
+                    if ((field.modifiers & AccStatic) == 0)
+                        fieldNames.add(new String(field.name));
+                }
+            }
+            if (type.methods != null)
+            {
+                for (AbstractMethodDeclaration method : type.methods)
+                {
+                    if (method instanceof MethodDeclaration)
+                    {
+                        final String selector = new String(method.selector);
+                        if (!methods.containsKey(selector))
+                            methods.put(selector, new ArrayList<MethodDeclaration>());
+                        // A generated method is unknown, unless it is an index's cache
+                        if (getGeneratedBy(method) == null)
+                            methods.get(selector).add((MethodDeclaration)method);
+                        else if (indexes.containsKey(selector))
+                            methods.get(selector).add(indexes.get(selector));
+                        else
+                            methods.put(selector, null);
+                    }
+                }
+            }
+        }
+        
+        /**
+         * Returns the names of the fields read by the given method, or
+         * <code>null</code> if not known.
+         */
+        public Set<String> analyse(MethodDeclaration method)
+        {
+            dependencies.clear();
+            unknown = false;
+            traverse(method);
+            return unknown ? null : new HashSet<String>(dependencies);
+        }
+        
+        private void traverse(MethodDeclaration method)
+        {
+            // Recursive calls add no dependencies
+            if (analysing.add(method))
+            {
+                method.traverse(this, (ClassScope)null);
+                analysing.remove(method);
+            }
+        }
+        
+        private void read(char[] name)
+        {
+            final String fieldName = new String(name);
+            // Local variables hiding fields are overestimated as fields
+            if (fieldNames.contains(fieldName))
+                dependencies.add(fieldName);
+        }
+        
+        @Override
+        public boolean visit(SingleNameReference reference, BlockScope scope)
+        {
+            read(reference.token);
+            return true;
+        }
+        
+        @Override
+        public boolean visit(SingleNameReference reference, ClassScope scope)
+        {
+            read(reference.token);
+            return true;
+        }
+        
+        @Override
+        public boolean visit(QualifiedNameReference reference, BlockScope scope)
+        {
+            read(reference.tokens[0]);
+            return true;
+        }
+        
+        @Override
+        public boolean visit(QualifiedNameReference reference, ClassScope scope)
+        {
+            read(reference.tokens[0]);
+            return true;
+        }
+        
+        @Override
+        public boolean visit(FieldReference reference, BlockScope scope)
+        {
+            if (reference.receiver.getClass() == ThisReference.class)
+            {
+                read(reference.token);
+                return false;
+            }
+            return true;
+        }
+        
+        @Override
+        public boolean visit(MessageSend send, BlockScope scope)
+        {
+            if (send.receiver.isImplicitThis())
+            {
+                final String selector = new String(send.selector);
+                final List<MethodDeclaration> called = methods.get(selector);
+                if (called == null)
+                {
+                    // Generated, or else inherited unless statically imported
+                    if (methods.containsKey(selector) || !staticImports.contains(selector))
+                        unknown = true;
+                }
+                else
+                {
+                    for (MethodDeclaration method : called)
+                        traverse(method);
+                }
+            }
+            return true;
+        }
+        
+        @Override
+        public boolean visit(ThisReference reference, BlockScope scope)
+        {
+            if (!reference.isImplicitThis())
+                unknown = true;
+            return true;
+        }
+        
+        @Override
+        public boolean visit(QualifiedThisReference reference, BlockScope scope)
+        {
+            unknown = true;
+            return true;
+        }
+        
+        @Override
+        public boolean visit(SuperReference reference, BlockScope scope)
+        {
+            unknown = true;
+            return true;
+        }
+    }
+    
     private class Instrumentation
     {
         private final TypeDeclaration type;
@@ -714,14 +1964,30 @@ public class HandleSchema extends EclipseAnnotationHandler<Schema>
         {
             this.type = (typeNode.get() instanceof TypeDeclaration) ? (TypeDeclaration)typeNode.get() : null;
             this.javaSpecMapping = new JavaSpecMapping(typeNode);
-            this.specTypeBefore = javaSpecMapping.specType(type);
+            this.specTypeBefore = specType();
         }
         
         public void after() throws IllegalStateException
         {
-            final Type specTypeAfter = javaSpecMapping.specType(type);
+            final Type specTypeAfter = specType();
             new SchemaSpec(new Delta<Type>(specTypeBefore, specTypeAfter),
                            JavaSpecMapping.typeForName.apply(javaSpecMapping)).checkInvariant();
         }
+        
+        /**
+         * Maps the type, deferring the invariants of the mapped bindings
+         * until the transformation is checked.
+         */
+        private Type specType()
+        {
+            return Bindings.deferred(new Supplier<Type>()
+            {
+                @Override
+                public Type get()
+                {
+                    return javaSpecMapping.specType(type);
+                }
+            });
+        }
     }
 }
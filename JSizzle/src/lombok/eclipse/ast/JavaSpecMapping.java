@@ -36,7 +36,9 @@ import org.eclipse.jdt.internal.compiler.ast.AbstractVariableDeclaration;
 import org.eclipse.jdt.internal.compiler.ast.Annotation;
 import org.eclipse.jdt.internal.compiler.ast.CompilationUnitDeclaration;
 import org.eclipse.jdt.internal.compiler.ast.ConstructorDeclaration;
+import org.eclipse.jdt.internal.compiler.ast.MemberValuePair;
 import org.eclipse.jdt.internal.compiler.ast.MethodDeclaration;
+import org.eclipse.jdt.internal.compiler.ast.TrueLiteral;
 import org.eclipse.jdt.internal.compiler.ast.TypeDeclaration;
 import org.eclipse.jdt.internal.compiler.ast.TypeReference;
 import org.jcurry.AsFunction;
@@ -154,13 +156,34 @@ public class JavaSpecMapping
         char[] name = method.selector;
 		return new Method(specVisibility(method.modifiers),
                           specOtherModifiers(method.modifiers),
-                          specSet(method.annotations, specAnnotation.apply(this).apply(scope)),
+                          specMethodAnnotations(scope, method),
                           specList(method.arguments, specVariable.apply(this).apply(scope)),
                           specName(name),
                           specList(method.arguments, compose(Variable.getTypeName, specVariable.apply(this).apply(scope))),
                           specReference(scope, method.returnType));
     }
     
+    /**
+     * The annotations of a method, with {@link JSizzleTypeName#LAZY}
+     * standing for <code>@Initialise(lazy = true)</code>.
+     */
+    private Set<TypeName> specMethodAnnotations(TypeDeclaration scope, MethodDeclaration method)
+    {
+        final Set<TypeName> annotations = specSet(method.annotations, specAnnotation.apply(this).apply(scope));
+        for (Annotation annotation : safeList(method.annotations))
+        {
+            if (specAnnotation(scope, annotation) == JSizzleTypeName.INITIALISE)
+            {
+                for (MemberValuePair pair : annotation.memberValuePairs())
+                {
+                    if ("lazy".equals(new String(pair.name)) && pair.value instanceof TrueLiteral)
+                        annotations.add(JSizzleTypeName.LAZY);
+                }
+            }
+        }
+        return annotations;
+    }
+    
     @AsFunction
     private Constructor specConstructor(TypeDeclaration scope, ConstructorDeclaration constructor)
     {
@@ -0,0 +1,128 @@
+package org.jsizzle;
+
+import static com.google.common.base.Objects.equal;
+import static com.google.common.collect.Maps.immutableEntry;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.google.common.collect.UnmodifiableIterator;
+
+/**
+ * An immutable map of a few entries held in an array of alternating keys
+ * and values, searched linearly. Keys and values may be null. Used by
+ * {@link Bindings#freeze} for small maps.
+ */
+final class ArrayMap<K, V> extends AbstractMap<K, V>
+{
+    /**
+     * The largest map held in an array.
+     */
+    static final int MAX_SIZE = 8;
+
+    private final Object[] keysAndValues;
+
+    /**
+     * The {@link java.util.Map#hashCode()}, computed on construction.
+     */
+    private final int hash;
+
+    ArrayMap(Map<? extends K, ? extends V> map)
+    {
+        final Object[] keysAndValues = new Object[map.size() * 2];
+        int length = 0, hash = 0;
+        for (Map.Entry<? extends K, ? extends V> entry : map.entrySet())
+        {
+            // Maps with other notions of equality may hold equal keys
+            if (indexOf(keysAndValues, length, entry.getKey()) == -1)
+            {
+                keysAndValues[length++] = entry.getKey();
+                keysAndValues[length++] = entry.getValue();
+                hash += (entry.getKey() == null ? 0 : entry.getKey().hashCode())
+                    ^ (entry.getValue() == null ? 0 : entry.getValue().hashCode());
+            }
+        }
+        this.keysAndValues = length == keysAndValues.length ? keysAndValues : Arrays.copyOf(keysAndValues, length);
+        this.hash = hash;
+    }
+
+    @Override
+    public boolean containsKey(Object key)
+    {
+        return indexOf(keysAndValues, keysAndValues.length, key) != -1;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key)
+    {
+        final int i = indexOf(keysAndValues, keysAndValues.length, key);
+        return i == -1 ? null : (V)keysAndValues[i + 1];
+    }
+
+    @Override
+    public int size()
+    {
+        return keysAndValues.length / 2;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet()
+    {
+        return new AbstractSet<Entry<K, V>>()
+        {
+            @Override
+            public Iterator<Entry<K, V>> iterator()
+            {
+                return new UnmodifiableIterator<Entry<K, V>>()
+                {
+                    private int i = 0;
+
+                    @Override
+                    public boolean hasNext()
+                    {
+                        return i < keysAndValues.length;
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public Entry<K, V> next()
+                    {
+                        if (!hasNext())
+                            throw new NoSuchElementException();
+                        final Entry<K, V> entry = immutableEntry((K)keysAndValues[i], (V)keysAndValues[i + 1]);
+                        i += 2;
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size()
+            {
+                return keysAndValues.length / 2;
+            }
+        };
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hash;
+    }
+
+    private static int indexOf(Object[] keysAndValues, int length, Object key)
+    {
+        for (int i = 0; i < length; i += 2)
+        {
+            if (equal(keysAndValues[i], key))
+                return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,82 @@
+package org.jsizzle;
+
+import static com.google.common.base.Objects.equal;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+
+import com.google.common.collect.Iterators;
+
+/**
+ * An immutable set of a few elements held in an array, searched linearly.
+ * Elements may be null. Used by {@link Bindings#freeze} for small sets,
+ * which are the common case in schema bindings.
+ */
+final class ArraySet<E> extends AbstractSet<E>
+{
+    /**
+     * The largest set held in an array.
+     */
+    static final int MAX_SIZE = 8;
+
+    private final Object[] elements;
+
+    /**
+     * The {@link java.util.Set#hashCode()}, computed on construction.
+     */
+    private final int hash;
+
+    ArraySet(Collection<? extends E> elements)
+    {
+        final Object[] distinct = new Object[elements.size()];
+        int size = 0, hash = 0;
+        for (E element : elements)
+        {
+            // Sets with other notions of equality may hold equal elements
+            if (indexOf(distinct, size, element) == -1)
+            {
+                distinct[size++] = element;
+                hash += element == null ? 0 : element.hashCode();
+            }
+        }
+        this.elements = size == distinct.length ? distinct : Arrays.copyOf(distinct, size);
+        this.hash = hash;
+    }
+
+    @Override
+    public boolean contains(Object o)
+    {
+        return indexOf(elements, elements.length, o) != -1;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<E> iterator()
+    {
+        return (Iterator<E>)Iterators.unmodifiableIterator(Arrays.asList(elements).iterator());
+    }
+
+    @Override
+    public int size()
+    {
+        return elements.length;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hash;
+    }
+
+    private static int indexOf(Object[] elements, int size, Object o)
+    {
+        for (int i = 0; i < size; i++)
+        {
+            if (equal(elements[i], o))
+                return i;
+        }
+        return -1;
+    }
+}
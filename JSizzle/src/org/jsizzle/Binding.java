@@ -1,122 +1,539 @@
 package org.jsizzle;
 
 import static com.google.common.base.Functions.compose;
-import static com.google.common.base.Functions.forPredicate;
-import static com.google.common.base.Predicates.equalTo;
-import static com.google.common.base.Predicates.not;
 import static com.google.common.base.Predicates.notNull;
 import static com.google.common.collect.Iterables.concat;
+import static com.google.common.collect.Iterables.filter;
 import static com.google.common.collect.Iterables.transform;
-import static com.google.common.collect.Maps.filterValues;
 import static com.google.common.collect.Maps.immutableEntry;
-import static com.google.common.collect.Sets.filter;
+import static java.util.Arrays.deepEquals;
+import static java.util.Arrays.deepHashCode;
+import static java.util.Collections.emptySet;
 import static java.util.Collections.singleton;
+import static java.util.Collections.unmodifiableSet;
 import static org.jcurry.ValueObjects.list;
 import static org.jcurry.ValueObjects.transform;
 import static org.jsizzle.Invariables.and;
 import static org.jsizzle.Invariables.asInvariable;
 import static org.jsizzle.Invariables.or;
 
-import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
 
 public abstract class Binding<T extends Binding<T>> implements Invariable
 {
-    public enum Inclusion {DIRECT, INCLUDED, EXPANDED}
+    /**
+     * How a member is included in a binding. A LAZY member is derived from
+     * the others on first access and cached; it is not data, but comparing
+     * or checking the binding computes it.
+     */
+    public enum Inclusion {DIRECT, INCLUDED, EXPANDED, IDENTITY, LAZY}
 
     /**
-     * All accessor functions to binding members, with an indication of how they
-     * are included; should be populated by the subclass constructor.
+     * A binding whose invariant verdicts may be reused by bindings of the
+     * same class constructed on this thread, see {@link Delta#derive}.
      */
-    private final Map<Function<T, ?>, Inclusion> accessors = new LinkedHashMap<Function<T, ?>, Inclusion>();
-    
+    private static final ThreadLocal<Binding<?>> basis = new ThreadLocal<Binding<?>>();
+
     /**
-     * A function that applies accessors to this binding.
+     * Whether bindings constructed on this thread defer evaluating their
+     * invariants, see {@link Bindings#deferred}.
      */
-    private final Function<Function<T, ?>, Object> applyAccessor = new Function<Function<T, ?>, Object>()
-    {
-        @Override
-        @SuppressWarnings("unchecked")
-        public Object apply(Function<T, ?> accessor)
-        {
-            return accessor.apply((T)Binding.this);
-        }
-    };
+    private static final ThreadLocal<Boolean> deferring = new ThreadLocal<Boolean>();
+
+    /**
+     * The class-wide table of accessor functions to binding members, with an
+     * indication of how they are included. Generated schema classes share a
+     * single table; otherwise it is populated by the subclass constructor.
+     */
+    private BindingClass<T> bindingClass;
+
+    /**
+     * The violated invariants of this binding, as bits indexed by the
+     * invariants declared by the binding class; should be populated by the
+     * subclass constructor. Names are only materialized when reported.
+     */
+    private long failed;
+
+    /**
+     * Violations not held in {@link #failed}, because the binding class does
+     * not declare them or declares more than fit. Allocated on the first
+     * such violation.
+     */
+    private Set<String> violations = emptySet();
+
+    /**
+     * Whether the invariants of this binding itself are yet to be evaluated,
+     * because its construction deferred them.
+     */
+    private volatile boolean deferred;
+
+    /**
+     * Whether the deferred invariants are being evaluated, guarded by this.
+     */
+    private boolean evaluating;
+
+    /**
+     * The memoized result of {@link #invariant()}, computed on first call.
+     * Bindings are immutable once constructed, so the result cannot change.
+     */
+    private volatile Boolean verdict;
+
+    /**
+     * The memoized result of {@link #getViolations()}, computed on first call.
+     */
+    private volatile List<Entry<? extends Invariable, Set<String>>> allViolations;
+
+    /**
+     * The memoized structural hash code, or zero if not yet computed. As for
+     * {@link String}, the race to compute it is benign.
+     */
+    private int hash;
 
     /**
-     * The set of invariables in this bindings data. First take the accessors to
-     * unexpanded data (because expanded data would miss invariants), apply the
-     * accessor to this binding, convert to an invariable, and exclude nulls
-     * (data that is not an invariable).
+     * Whether this is the canonical instance of its value, as returned by
+     * {@link Bindings#intern}.
      */
-    private final Set<Invariable> invariables =
-        filter(transform(filterValues(accessors, not(equalTo(Inclusion.EXPANDED))).keySet(), compose(asInvariable, applyAccessor)), notNull());
+    private volatile boolean interned;
 
     /**
-     * All violations of invariants of this binding, should be populated by the
-     * subclass constructor.
+     * Constructs a binding whose members are described by the given shared
+     * table.
      */
-    private final Set<String> violations = new LinkedHashSet<String>();
+    protected Binding(BindingClass<T> bindingClass)
+    {
+        this.bindingClass = bindingClass;
+    }
+
+    /**
+     * Constructs a binding whose members are added by the subclass
+     * constructor, using {@link #addAccessor}.
+     */
+    @SuppressWarnings("unchecked")
+    protected Binding()
+    {
+        this.bindingClass = BindingClass.of((Class<T>)getClass());
+    }
 
     protected void addAccessor(Function<T, ?> accessor, Inclusion inclusion)
     {
-        accessors.put(accessor, inclusion);
+        bindingClass = bindingClass.add(null, accessor, inclusion);
+        forget();
     }
 
     protected void addAccessor(Predicate<T> accessor, Inclusion inclusion)
     {
-        accessors.put(forPredicate(accessor), inclusion);
+        bindingClass = bindingClass.add(null, accessor, inclusion);
+        forget();
     }
     
     protected void addViolation(String violation)
     {
+        final int invariant = bindingClass.indexOfInvariant(violation);
+        if (invariant != -1)
+        {
+            addViolation(invariant);
+        }
+        else
+        {
+            addOtherViolation(violation);
+            forget();
+        }
+    }
+
+    /**
+     * Adds a violation of the invariant at the given index, as declared by
+     * the binding class. Generated constructors call this, avoiding any
+     * allocation or hashing.
+     */
+    protected void addViolation(int invariant)
+    {
+        if (invariant < Long.SIZE)
+            failed |= 1L << invariant;
+        else
+            addOtherViolation(bindingClass.getInvariant(invariant));
+        forget();
+    }
+
+    private void addOtherViolation(String violation)
+    {
+        if (violations.isEmpty())
+            violations = new LinkedHashSet<String>();
         violations.add(violation);
     }
     
+    /**
+     * Returns whether the invariant at the given index is known to hold
+     * without evaluating it, because it held for the current basis and the
+     * slots it reads are unchanged. Generated constructors call this before
+     * evaluating each invariant.
+     */
+    @SuppressWarnings("unchecked")
+    protected final boolean heldBefore(int invariant)
+    {
+        final Binding<?> before = basis.get();
+        if (before == null || before.getClass() != getClass())
+            return false;
+        final long dependencies = bindingClass.getDependencies(invariant);
+        if (dependencies == -1 || before.violates(invariant))
+            return false;
+        for (long slots = dependencies; slots != 0; slots &= slots - 1)
+        {
+            if (!slotEquals(Long.numberOfTrailingZeros(slots), (T)before))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the member in the given slot. Generated schema classes
+     * override this to read their fields directly, rather than through the
+     * accessor functions, which are kept for frame conditions.
+     */
+    @SuppressWarnings("unchecked")
+    protected Object get(int slot)
+    {
+        return bindingClass.getAccessor(slot).apply((T)this);
+    }
+
+    /**
+     * Whether the member in the given slot is equal to that of the given
+     * binding of the same class, comparing arrays deeply. Generated schema
+     * classes override this to compare primitive members without boxing.
+     */
+    protected boolean slotEquals(int slot, T other)
+    {
+        final Object value = get(slot);
+        final Object otherValue = other.get(slot);
+        if (value == otherValue)
+            return true;
+        if (value == null || otherValue == null)
+            return false;
+        return value.getClass().isArray()
+            ? deepEquals(new Object[] {value}, new Object[] {otherValue})
+            : value.equals(otherValue);
+    }
+
+    /**
+     * The hash code of the member in the given slot, hashing arrays deeply.
+     * Generated schema classes override this to hash primitive members as
+     * their wrappers would, without boxing.
+     */
+    protected int slotHashCode(int slot)
+    {
+        final Object value = get(slot);
+        if (value == null)
+            return 0;
+        return value.getClass().isArray() ? deepHashCode(new Object[] {value}) : value.hashCode();
+    }
+
+    /**
+     * Returns whether to defer evaluating the invariants of this binding
+     * itself, noting that they are to be evaluated on demand if so.
+     * Generated constructors call this before evaluating any invariant.
+     */
+    protected final boolean deferInvariants()
+    {
+        deferred = deferring.get() != null;
+        return deferred;
+    }
+
+    /**
+     * Evaluates the invariants of this binding itself, adding any
+     * violations. Generated schema classes override this, and call it from
+     * their constructor unless construction is deferred.
+     */
+    protected void evaluateInvariants()
+    {
+    }
+
+    /**
+     * Sets whether bindings constructed on this thread defer evaluating
+     * their invariants, returning the previous setting.
+     */
+    protected static boolean setDeferring(boolean defer)
+    {
+        final boolean previous = deferring.get() != null;
+        if (defer)
+            deferring.set(Boolean.TRUE);
+        else
+            deferring.remove();
+        return previous;
+    }
+
+    /**
+     * Sets the basis for bindings constructed on this thread, returning the
+     * previous basis.
+     */
+    static Binding<?> setBasis(Binding<?> binding)
+    {
+        final Binding<?> previous = basis.get();
+        if (binding == null)
+            basis.remove();
+        else
+            basis.set(binding);
+        return previous;
+    }
+    
+    /**
+     * Evaluates the invariants of this binding itself if construction
+     * deferred them. Invariants that inspect this binding while being
+     * evaluated see the violations found so far, as they would during
+     * construction.
+     */
+    private void evaluated()
+    {
+        if (deferred)
+        {
+            synchronized (this)
+            {
+                if (deferred && !evaluating)
+                {
+                    evaluating = true;
+                    try
+                    {
+                        evaluateInvariants();
+                        deferred = false;
+                    }
+                    finally
+                    {
+                        evaluating = false;
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean hasOwnViolations()
+    {
+        evaluated();
+        return failed != 0 || !violations.isEmpty();
+    }
+
+    /**
+     * Whether the invariant at the given index, as declared by the binding
+     * class, is violated by this binding itself.
+     */
+    private boolean violates(int invariant)
+    {
+        evaluated();
+        return invariant < Long.SIZE
+            ? (failed & 1L << invariant) != 0
+            : violations.contains(bindingClass.getInvariant(invariant));
+    }
+
+    /**
+     * The violations of the invariants of this binding itself, materializing
+     * the names of those held as bits, in declaration order.
+     */
+    private Set<String> ownViolations()
+    {
+        evaluated();
+        final long bits = failed;
+        if (bits == 0)
+            return violations;
+        final Set<String> result = new LinkedHashSet<String>();
+        for (long rest = bits; rest != 0; rest &= rest - 1)
+            result.add(bindingClass.getInvariant(Long.numberOfTrailingZeros(rest)));
+        result.addAll(violations);
+        return result;
+    }
+    
+    /**
+     * Discards memoized results, in case they were computed while the
+     * subclass constructor was still populating this binding.
+     */
+    private void forget()
+    {
+        verdict = null;
+        allViolations = null;
+    }
+    
+    /**
+     * A function that gets slots of this binding.
+     */
+    private Function<Integer, Object> getSlot()
+    {
+        return new Function<Integer, Object>()
+        {
+            @Override
+            public Object apply(Integer slot)
+            {
+                return get(slot);
+            }
+        };
+    }
+
+    /**
+     * The invariables in this bindings data. First take the slots of
+     * unexpanded data (because expanded data would miss invariants), get the
+     * slot of this binding, computing it if lazy, convert to an invariable,
+     * and exclude nulls (data that is not an invariable).
+     */
+    private Iterable<Invariable> getInvariables()
+    {
+        return filter(transform(bindingClass.getInvariableSlots(), compose(asInvariable, getSlot())), notNull());
+    }
+    
     @Override
     public Iterable<? extends Entry<? extends Invariable, Set<String>>> getViolations()
     {
-        return violations.isEmpty()
-            ? and(invariables).getViolations()
-            : concat(singleton(immutableEntry(this, violations)), and(invariables).getViolations());
+        List<Entry<? extends Invariable, Set<String>>> result = allViolations;
+        if (result == null)
+        {
+            // Racy single-check; concurrent callers compute equal lists
+            allViolations = result = ImmutableList.<Entry<? extends Invariable, Set<String>>>copyOf(!hasOwnViolations()
+                ? and(getInvariables()).getViolations()
+                : concat(singleton(immutableEntry(this, unmodifiableSet(ownViolations()))), and(getInvariables()).getViolations()));
+        }
+        return result;
+    }
+    
+    /**
+     * Whether the invariables in this bindings data all hold, visiting the
+     * slots directly so that a binding that holds is checked without
+     * allocating views.
+     */
+    private boolean invariablesHold()
+    {
+        final List<Integer> slots = bindingClass.getInvariableSlots();
+        for (int i = 0; i < slots.size(); i++)
+        {
+            if (!Invariables.allHold(get(slots.get(i))))
+                return false;
+        }
+        return true;
     }
     
     @Override
     public boolean invariant()
     {
-        final boolean disjoint = getClass().getAnnotation(Disjoint.class) != null;
-        return violations.isEmpty() && (disjoint ? or(invariables) : and(invariables)).invariant();
+        Boolean result = verdict;
+        if (result == null)
+        {
+            verdict = result = !hasOwnViolations()
+                && (bindingClass.isDisjoint() ? or(getInvariables()).invariant() : invariablesHold());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the same verdict as {@link #invariant()}, evaluating large
+     * collections of invariables in parallel using the given executor.
+     *
+     * @see CompositeInvariable#invariant(ExecutorService)
+     */
+    public boolean invariant(ExecutorService executor)
+    {
+        Boolean result = verdict;
+        if (result == null)
+        {
+            verdict = result = !hasOwnViolations()
+                && new CompositeInvariable(getInvariables(), !bindingClass.isDisjoint()).invariant(executor);
+        }
+        return result;
     }
 
-    public void checkInvariant() throws IllegalStateException
+    public void checkInvariant() throws ViolationReport
     {
         if (!invariant())
+            throw new ViolationReport(this);
+    }
+
+    /**
+     * Checks the invariant, evaluating large collections of invariables in
+     * parallel using the given executor. Violations are reported in the same
+     * order as by {@link #checkInvariant()}.
+     */
+    public void checkInvariant(ExecutorService executor) throws ViolationReport
+    {
+        if (!invariant(executor))
+            throw new ViolationReport(this);
+    }
+
+    /**
+     * Structural equality, for use by generated schema classes. Bindings of
+     * the same class are equal if all their members are equal. Since hash
+     * codes are memoized, unequal bindings are usually rejected at once.
+     */
+    @SuppressWarnings("unchecked")
+    protected final boolean bindingEquals(Object o)
+    {
+        if (o == this)
+            return true;
+        if (o == null || o.getClass() != getClass())
+            return false;
+        // Distinct canonical instances cannot be equal
+        if (interned && ((Binding<?>)o).interned)
+            return false;
+        final T other = (T)o;
+        if (bindingHashCode() != other.bindingHashCode())
+            return false;
+        for (int slot : bindingClass.getEqualitySlots())
         {
-            throw new IllegalStateException(transform(getViolations(), new Function<Entry<? extends Invariable, Set<String>>, String>()
-            {
-                @Override
-                public String apply(Entry<? extends Invariable, Set<String>> from)
-                {
-                    return from.getValue() + " failed in " + from.getKey().getClass().getSimpleName();
-                }
-            }).toString());
+            if (!slotEquals(slot, other))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Structural hash code, for use by generated schema classes. Computed on
+     * first call.
+     */
+    protected final int bindingHashCode()
+    {
+        int result = hash;
+        if (result == 0)
+        {
+            result = 1;
+            for (int slot : bindingClass.getEqualitySlots())
+                result = 31 * result + slotHashCode(slot);
+            // Zero means not yet computed
+            if (result == 0)
+                result = 1;
+            hash = result;
         }
+        return result;
+    }
+
+    /**
+     * The invariants of this binding itself that do not hold.
+     */
+    Set<String> getOwnViolations()
+    {
+        return unmodifiableSet(ownViolations());
+    }
+
+    void setInterned()
+    {
+        interned = true;
+    }
+
+    public boolean isInterned()
+    {
+        return interned;
+    }
+
+    public BindingClass<T> getBindingClass()
+    {
+        return bindingClass;
     }
 
     public Set<Function<T, ?>> getDataAccessors()
     {
-        return filterValues(accessors, not(equalTo(Inclusion.INCLUDED))).keySet();
+        return bindingClass.getDataAccessors();
     }
     
     public List<Object> getData()
     {
-        return list(transform(getDataAccessors(), applyAccessor));
+        return list(transform(bindingClass.getDataSlots(), getSlot()));
     }
 }
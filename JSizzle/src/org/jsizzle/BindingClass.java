@@ -0,0 +1,404 @@
+package org.jsizzle;
+
+import static com.google.common.base.Functions.forPredicate;
+import static com.google.common.base.Objects.equal;
+import static java.util.Arrays.copyOf;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableSet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jsizzle.Binding.Inclusion;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.collect.MapMaker;
+
+/**
+ * The immutable, class-wide description of a schema binding's members. It
+ * holds an indexed table of member names, accessor functions and inclusions,
+ * and whether the class is <code>@Disjoint</code>.
+ * <p>
+ * A generated schema class builds its table once, in a static initialiser,
+ * and passes it to the {@link Binding} constructor, so that all bindings of
+ * the class share it.
+ */
+public final class BindingClass<T extends Binding<T>>
+{
+    /**
+     * The empty table of each binding class, see {@link #of}.
+     */
+    private static final Map<Class<?>, BindingClass<?>> empty = new MapMaker().weakKeys().makeMap();
+
+    private final boolean disjoint;
+    private final String[] names;
+    private final Function<T, ?>[] accessors;
+    private final Inclusion[] inclusions;
+
+    /**
+     * Whether each slot may contain invariables, as far as is known from its
+     * declared type.
+     */
+    private final boolean[] mayContainInvariables;
+
+    /**
+     * The names of the class's invariants, or <code>null</code> if not
+     * declared (in which case any violation may be added).
+     */
+    private final String[] invariants;
+
+    /**
+     * For each invariant, the bitmask of slots it reads, or -1 if not known;
+     * <code>null</code> if not declared.
+     */
+    private final long[] dependencies;
+
+    /**
+     * Accessors to the binding's data, in slot order; that is all accessors
+     * except those to included bindings (whose data is expanded) and to the
+     * identity of a binding with no other members.
+     */
+    private final Set<Function<T, ?>> dataAccessors;
+
+    /**
+     * The slots of the data accessors, the first for each accessor.
+     */
+    private final List<Integer> dataSlots;
+
+    /**
+     * Slots of data that may contain invariables. Expanded data is excluded
+     * because it is checked in the included binding.
+     */
+    private final List<Integer> invariableSlots;
+
+    /**
+     * Whether bindings of the class trivially satisfy their invariant, having
+     * no invariants, no disjunction and no data that may contain invariables.
+     */
+    private final boolean inert;
+
+    /**
+     * Slots of the members that establish binding equality, in slot order.
+     * Expanded data is excluded because it is a copy of data in an included
+     * binding, which is compared instead.
+     */
+    private final int[] equalitySlots;
+
+    /**
+     * For tables of at most {@link Long#SIZE} slots, the bitmask of slots
+     * occupied by each accessor, and of all data slots. Frame conditions
+     * compile to these masks.
+     */
+    private final Map<Function<T, ?>, Long> accessorMasks;
+    private final long dataMask;
+
+    /**
+     * The table last returned by {@link #add}, returned again if the same
+     * member is added. Bindings that add their accessors in their
+     * constructor, rather than sharing a table built once, so build each
+     * table only for the first binding of their class. As for
+     * {@link String#hashCode()}, the race to set it is benign.
+     */
+    private BindingClass<T> added;
+
+    private BindingClass(boolean disjoint,
+                         String[] names,
+                         Function<T, ?>[] accessors,
+                         Inclusion[] inclusions,
+                         boolean[] mayContainInvariables,
+                         String[] invariants,
+                         long[] dependencies)
+    {
+        this.disjoint = disjoint;
+        this.names = names;
+        this.accessors = accessors;
+        this.inclusions = inclusions;
+        this.mayContainInvariables = mayContainInvariables;
+        this.invariants = invariants;
+        this.dependencies = dependencies;
+
+        final Set<Function<T, ?>> dataAccessors = new LinkedHashSet<Function<T, ?>>();
+        final List<Integer> dataSlots = new ArrayList<Integer>();
+        final List<Integer> invariableSlots = new ArrayList<Integer>();
+        for (int slot = 0; slot < accessors.length; slot++)
+        {
+            if ((inclusions[slot] == Inclusion.DIRECT || inclusions[slot] == Inclusion.EXPANDED)
+                    && dataAccessors.add(accessors[slot]))
+                dataSlots.add(slot);
+            if (isInvariable(slot, inclusions, mayContainInvariables))
+                invariableSlots.add(slot);
+        }
+        this.dataAccessors = unmodifiableSet(dataAccessors);
+        this.dataSlots = unmodifiableList(dataSlots);
+        this.invariableSlots = unmodifiableList(invariableSlots);
+        this.inert = invariants != null && invariants.length == 0 && !disjoint && invariableSlots.isEmpty();
+        int equalitySlotCount = 0;
+        for (int slot = 0; slot < accessors.length; slot++)
+        {
+            if (inclusions[slot] != Inclusion.EXPANDED)
+                equalitySlotCount++;
+        }
+        this.equalitySlots = new int[equalitySlotCount];
+        for (int slot = 0, i = 0; slot < accessors.length; slot++)
+        {
+            if (inclusions[slot] != Inclusion.EXPANDED)
+                equalitySlots[i++] = slot;
+        }
+
+        final Map<Function<T, ?>, Long> accessorMasks = new HashMap<Function<T, ?>, Long>();
+        long dataMask = 0;
+        if (accessors.length <= Long.SIZE)
+        {
+            for (int slot = 0; slot < accessors.length; slot++)
+            {
+                final Long mask = accessorMasks.get(accessors[slot]);
+                accessorMasks.put(accessors[slot], (mask == null ? 0 : mask) | (1L << slot));
+                if (dataAccessors.contains(accessors[slot]))
+                    dataMask |= 1L << slot;
+            }
+        }
+        this.accessorMasks = accessorMasks;
+        this.dataMask = dataMask;
+    }
+
+    /**
+     * Returns an empty table for the given binding class, to which members
+     * can be added with {@link #add}. The table is shared by all callers.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Binding<T>> BindingClass<T> of(Class<T> type)
+    {
+        BindingClass<T> result = (BindingClass<T>)empty.get(type);
+        if (result == null)
+        {
+            result = new BindingClass<T>(type.getAnnotation(Disjoint.class) != null,
+                                         new String[0],
+                                         new Function[0],
+                                         new Inclusion[0],
+                                         new boolean[0],
+                                         null,
+                                         null);
+            // Racing callers may briefly see different, but equivalent, tables
+            empty.put(type, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a table with the given member added in the next slot. This
+     * table is not changed.
+     *
+     * @param name the member name, or <code>null</code> if not known
+     */
+    public BindingClass<T> add(String name, Function<T, ?> accessor, Inclusion inclusion)
+    {
+        return add(name, accessor, inclusion, true);
+    }
+
+    /**
+     * Returns a table with the given member added in the next slot. This
+     * table is not changed.
+     *
+     * @param name the member name, or <code>null</code> if not known
+     * @param mayContainInvariables <code>false</code> if the member's type
+     *        guarantees that its values never contain invariables, so that
+     *        it need not be walked when checking the invariant
+     */
+    public BindingClass<T> add(String name, Function<T, ?> accessor, Inclusion inclusion, boolean mayContainInvariables)
+    {
+        final int slot = accessors.length;
+        final BindingClass<T> added = this.added;
+        if (added != null
+                && added.accessors[slot].equals(accessor)
+                && added.inclusions[slot] == inclusion
+                && added.mayContainInvariables[slot] == mayContainInvariables
+                && equal(added.names[slot], name))
+            return added;
+        final String[] names = copyOf(this.names, slot + 1);
+        final Function<T, ?>[] accessors = copyOf(this.accessors, slot + 1);
+        final Inclusion[] inclusions = copyOf(this.inclusions, slot + 1);
+        final boolean[] mayContain = copyOf(this.mayContainInvariables, slot + 1);
+        names[slot] = name;
+        accessors[slot] = accessor;
+        inclusions[slot] = inclusion;
+        mayContain[slot] = mayContainInvariables;
+        return this.added = new BindingClass<T>(disjoint, names, accessors, inclusions, mayContain, invariants, dependencies);
+    }
+
+    public BindingClass<T> add(String name, Predicate<T> accessor, Inclusion inclusion)
+    {
+        return add(name, forPredicate(accessor), inclusion);
+    }
+
+    public BindingClass<T> add(String name, Predicate<T> accessor, Inclusion inclusion, boolean mayContainInvariables)
+    {
+        return add(name, forPredicate(accessor), inclusion, mayContainInvariables);
+    }
+
+    /**
+     * Returns a table declaring the names of all the class's invariants,
+     * which are the only violations its bindings can have. This table is not
+     * changed.
+     */
+    public BindingClass<T> invariants(String... invariants)
+    {
+        return new BindingClass<T>(disjoint, names, accessors, inclusions, mayContainInvariables, invariants.clone(), null);
+    }
+
+    /**
+     * Returns a table declaring, for each of the class's invariants in
+     * order, the bitmask of slots it reads, or -1 if not known. An invariant
+     * that held for a binding need not be evaluated again for another binding
+     * of the class with equal values in those slots, see
+     * {@link Delta#derive}. This table is not changed.
+     */
+    public BindingClass<T> dependencies(long... dependencies)
+    {
+        if (invariants == null || dependencies.length != invariants.length || !hasMasks())
+            throw new IllegalArgumentException("Dependencies do not match the declared invariants");
+        return new BindingClass<T>(disjoint, names, accessors, inclusions, mayContainInvariables, invariants, dependencies.clone());
+    }
+
+    public boolean isDisjoint()
+    {
+        return disjoint;
+    }
+
+    /**
+     * Whether bindings of this class always satisfy their invariant, and
+     * so need never be checked.
+     */
+    public boolean isInert()
+    {
+        return inert;
+    }
+
+    /**
+     * Returns the number of member slots.
+     */
+    public int size()
+    {
+        return accessors.length;
+    }
+
+    public String getName(int slot)
+    {
+        return names[slot];
+    }
+
+    public Function<T, ?> getAccessor(int slot)
+    {
+        return accessors[slot];
+    }
+
+    public Inclusion getInclusion(int slot)
+    {
+        return inclusions[slot];
+    }
+
+    /**
+     * Whether members can be identified by bitmask, see {@link #getMask}.
+     */
+    public boolean hasMasks()
+    {
+        return accessors.length <= Long.SIZE;
+    }
+
+    /**
+     * Returns the bitmask of slots accessed by the given accessor, or zero
+     * if it is not in this table. Only valid if {@link #hasMasks()}.
+     */
+    public long getMask(Function<T, ?> accessor)
+    {
+        final Long mask = accessorMasks.get(accessor);
+        return mask == null ? 0 : mask;
+    }
+
+    /**
+     * Returns the bitmask of all data slots. Only valid if
+     * {@link #hasMasks()}.
+     */
+    public long getDataMask()
+    {
+        return dataMask;
+    }
+
+    /**
+     * Returns the name of the invariant at the given index, as declared by
+     * {@link #invariants}.
+     */
+    public String getInvariant(int invariant)
+    {
+        return invariants[invariant];
+    }
+
+    /**
+     * Returns the index of the named invariant, or -1 if not declared.
+     */
+    public int indexOfInvariant(String invariant)
+    {
+        if (invariants != null)
+        {
+            for (int i = 0; i < invariants.length; i++)
+            {
+                if (invariants[i].equals(invariant))
+                    return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the bitmask of slots read by the invariant at the given index,
+     * or -1 if not known.
+     */
+    public long getDependencies(int invariant)
+    {
+        return dependencies == null ? -1 : dependencies[invariant];
+    }
+
+    public Set<Function<T, ?>> getDataAccessors()
+    {
+        return dataAccessors;
+    }
+
+    List<Integer> getDataSlots()
+    {
+        return dataSlots;
+    }
+
+    List<Integer> getInvariableSlots()
+    {
+        return invariableSlots;
+    }
+
+    /**
+     * Whether the given slot is checked for invariables, as an unexpanded
+     * member whose type may contain them.
+     */
+    boolean isInvariable(int slot)
+    {
+        return isInvariable(slot, inclusions, mayContainInvariables);
+    }
+
+    private static boolean isInvariable(int slot, Inclusion[] inclusions, boolean[] mayContainInvariables)
+    {
+        return (inclusions[slot] == Inclusion.DIRECT
+                || inclusions[slot] == Inclusion.INCLUDED
+                || inclusions[slot] == Inclusion.LAZY)
+            && mayContainInvariables[slot];
+    }
+
+    /**
+     * The slots of the members compared by binding equality.
+     */
+    int[] getEqualitySlots()
+    {
+        return equalitySlots;
+    }
+}
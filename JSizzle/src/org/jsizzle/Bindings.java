@@ -0,0 +1,197 @@
+package org.jsizzle;
+
+import static java.util.Collections.newSetFromMap;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableMap;
+import static java.util.Collections.unmodifiableSet;
+import static java.util.Collections.unmodifiableSortedMap;
+import static java.util.Collections.unmodifiableSortedSet;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Sets;
+
+public class Bindings
+{
+    private static final Interner<Binding<?>> interner = Interners.newWeakInterner();
+
+    /**
+     * Returns the canonical instance of the given binding, that is the first
+     * structurally equal binding to have been interned and still be reachable.
+     * <p>
+     * Interned bindings are compared by reference, and their memoized
+     * invariant verdicts and hash codes are shared by everyone holding an
+     * equal binding. Only bindings with structural equality (such as
+     * generated schema classes) should be interned.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Binding<T>> T intern(T binding)
+    {
+        final T canonical = (T)interner.intern(binding);
+        canonical.setInterned();
+        return canonical;
+    }
+
+    /**
+     * Returns the value constructed by the given supplier, deferring the
+     * evaluation of the invariants of any schema bindings constructed by it
+     * until they are first checked, when each is evaluated once. This suits
+     * intermediate bindings, such as the before and after-states of an
+     * operation, that are only checked as part of some enclosing binding if
+     * at all.
+     * <p>
+     * Generated schema classes also have a static <code>deferred</code>
+     * factory taking their constructor arguments.
+     */
+    public static <T> T deferred(Supplier<? extends T> construction)
+    {
+        final boolean previous = Binding.setDeferring(true);
+        try
+        {
+            return construction.get();
+        }
+        finally
+        {
+            Binding.setDeferring(previous);
+        }
+    }
+
+    /**
+     * Returns an immutable set equal to the given one, which is adopted
+     * without copying if already frozen, immutable or persistent. Generated
+     * schema constructors freeze their collection arguments like this, so
+     * that bindings are not changed by their callers and do not keep
+     * oversized hash tables alive.
+     * <p>
+     * Small sets are held in arrays and enum sets as bitsets. Larger sets are
+     * held in Guava's immutable sets, which are hashed for lookup, unless
+     * they contain null. Sorted sets keep their comparator. A set whose
+     * elements are merged by copying it by equality, such as one comparing
+     * by identity, is copied into an identity set instead.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static <E> Set<E> freeze(Set<E> set)
+    {
+        if (set == null || set instanceof ArraySet<?> || set instanceof ImmutableSet<?> || set instanceof PersistentSet<?>)
+            return set;
+        if (set instanceof EnumSet<?>)
+            return (Set<E>)Sets.immutableEnumSet((EnumSet)set);
+        if (set instanceof SortedSet<?>)
+            return freeze((SortedSet<E>)set);
+        final Set<E> copy = set.size() <= ArraySet.MAX_SIZE ? new ArraySet<E>(set)
+            : containsNull(set) ? unmodifiableSet(new LinkedHashSet<E>(set)) : ImmutableSet.copyOf(set);
+        if (copy.size() == set.size())
+            return copy;
+        final Set<E> identityCopy = newSetFromMap(new IdentityHashMap<E, Boolean>());
+        identityCopy.addAll(set);
+        return unmodifiableSet(identityCopy);
+    }
+
+    public static <E> SortedSet<E> freeze(SortedSet<E> set)
+    {
+        if (set == null || set instanceof ImmutableSortedSet<?>)
+            return set;
+        // Only possible if the comparator allows null
+        return containsNull(set) ? unmodifiableSortedSet(new TreeSet<E>(set)) : ImmutableSortedSet.copyOfSorted(set);
+    }
+
+    public static <E> List<E> freeze(List<E> list)
+    {
+        if (list == null || list instanceof ImmutableList<?> || list instanceof PersistentVector<?>)
+            return list;
+        return containsNull(list) ? unmodifiableList(new ArrayList<E>(list)) : ImmutableList.copyOf(list);
+    }
+
+    /**
+     * Returns an immutable map equal to the given one, as for
+     * {@link #freeze(Set)}. Enum maps are frozen as arrays, and identity
+     * maps are copied as such.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static <K, V> Map<K, V> freeze(Map<K, V> map)
+    {
+        if (map == null || map instanceof ArrayMap<?, ?> || map instanceof ImmutableMap<?, ?> || map instanceof PersistentMap<?, ?>)
+            return map;
+        if (map instanceof EnumMap<?, ?>)
+            return unmodifiableMap(new EnumMap((EnumMap)map));
+        if (map instanceof SortedMap<?, ?>)
+            return freeze((SortedMap<K, V>)map);
+        if (!(map instanceof IdentityHashMap<?, ?>))
+        {
+            // Guava rejects equal keys, so is only given maps known to be hashed
+            if (map.size() > ArrayMap.MAX_SIZE && isHashed(map) && !containsNull(map))
+                return ImmutableMap.copyOf(map);
+            final Map<K, V> copy = map.size() <= ArrayMap.MAX_SIZE
+                ? new ArrayMap<K, V>(map) : unmodifiableMap(new LinkedHashMap<K, V>(map));
+            // Otherwise copying by equality merged keys
+            if (copy.size() == map.size())
+                return copy;
+        }
+        return unmodifiableMap(new IdentityHashMap<K, V>(map));
+    }
+
+    public static <K, V> SortedMap<K, V> freeze(SortedMap<K, V> map)
+    {
+        if (map == null || map instanceof ImmutableSortedMap<?, ?>)
+            return map;
+        return containsNull(map) ? unmodifiableSortedMap(new TreeMap<K, V>(map)) : ImmutableSortedMap.copyOfSorted(map);
+    }
+
+    /**
+     * Whether the given map is a hash table, so that its keys are distinct
+     * by equality.
+     */
+    private static boolean isHashed(Map<?, ?> map)
+    {
+        return map instanceof HashMap<?, ?> || map instanceof Hashtable<?, ?> || map instanceof ConcurrentHashMap<?, ?>;
+    }
+
+    /**
+     * Whether any of the given elements is null, which Guava's immutable
+     * collections do not allow. Scans rather than asking the collection,
+     * which may not allow the question.
+     */
+    private static boolean containsNull(Iterable<?> elements)
+    {
+        for (Object element : elements)
+        {
+            if (element == null)
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean containsNull(Map<?, ?> map)
+    {
+        for (Entry<?, ?> entry : map.entrySet())
+        {
+            if (entry.getKey() == null || entry.getValue() == null)
+                return true;
+        }
+        return false;
+    }
+}
@@ -3,39 +3,175 @@
  */
 package org.jsizzle;
 
-import static com.google.common.base.Predicates.not;
-import static com.google.common.collect.Iterables.concat;
-import static com.google.common.collect.Iterables.filter;
-import static com.google.common.collect.Iterables.transform;
-import static org.jcurry.ValueObjects.uniques;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Lists.partition;
+import static java.util.Collections.unmodifiableCollection;
+import static org.jsizzle.Invariables.noViolations;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import com.google.common.base.Function;
-
-public abstract class CompositeInvariable implements Invariable
+/**
+ * A conjunction or disjunction of component invariables. The components may
+ * change, so the composite is evaluated afresh on each call; bindings
+ * memoize their own verdicts instead.
+ */
+public class CompositeInvariable implements Invariable
 {
+    /**
+     * The number of components evaluated by each parallel task.
+     */
+    static final int PARALLEL_CHUNK_SIZE = 1024;
+
     protected final Iterable<? extends Invariable> components;
-    protected final Iterable<Entry<? extends Invariable, Set<String>>> violations;
 
-    public CompositeInvariable(Iterable<? extends Invariable> components)
+    /**
+     * Whether all components must hold (conjunction), or any (disjunction).
+     */
+    protected final boolean conjunction;
+
+    public CompositeInvariable(Iterable<? extends Invariable> components, boolean conjunction)
     {
         this.components = components;
-        this.violations = uniques(concat(transform(filter(components, not(invariant)), getViolations)),
-            new Function<Entry<? extends Invariable, Set<String>>, Invariable>()
+        this.conjunction = conjunction;
+    }
+
+    @Override
+    public boolean invariant()
+    {
+        // A conjunction fails at its first failing component, and a
+        // disjunction holds at its first holding component
+        for (Invariable component : components)
+        {
+            if (component.invariant() != conjunction)
+                return !conjunction;
+        }
+        return conjunction;
+    }
+
+    /**
+     * Returns the same verdict as {@link #invariant()}, but evaluates large
+     * numbers of components in parallel, in chunks, using the given executor.
+     * Smaller composites are evaluated in this thread, looking for large
+     * composites among their components. Tasks stop early once the verdict
+     * is decided.
+     * <p>
+     * Parallel tasks evaluate their components sequentially, so the executor
+     * may be bounded.
+     */
+    public boolean invariant(final ExecutorService executor)
+    {
+        final List<Invariable> all = newArrayList(components);
+        return all.size() < 2 * PARALLEL_CHUNK_SIZE
+            ? invariant(all, executor)
+            : invariantInParallel(all, executor);
+    }
+
+    private boolean invariant(List<Invariable> all, ExecutorService executor)
+    {
+        for (Invariable component : all)
+        {
+            if (invariant(component, executor) != conjunction)
+                return !conjunction;
+        }
+        return conjunction;
+    }
+
+    private boolean invariantInParallel(List<Invariable> all, ExecutorService executor)
+    {
+        final AtomicBoolean decided = new AtomicBoolean();
+        final List<Future<?>> tasks = new ArrayList<Future<?>>();
+        for (final List<Invariable> chunk : partition(all, PARALLEL_CHUNK_SIZE))
+        {
+            tasks.add(executor.submit(new Callable<Void>()
+            {
+                @Override
+                public Void call()
+                {
+                    for (Invariable component : chunk)
+                    {
+                        if (decided.get())
+                            break;
+                        if (component.invariant() != conjunction)
+                            decided.set(true);
+                    }
+                    return null;
+                }
+            }));
+        }
+        try
         {
-            @Override
-            public Invariable apply(Entry<? extends Invariable, Set<String>> from)
+            for (Future<?> task : tasks)
             {
-                return from.getKey();
+                if (decided.get())
+                    task.cancel(false);
+                else
+                    task.get();
             }
-        });
+        }
+        catch (InterruptedException e)
+        {
+            for (Future<?> task : tasks)
+                task.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while checking invariant", e);
+        }
+        catch (ExecutionException e)
+        {
+            for (Future<?> task : tasks)
+                task.cancel(false);
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException)e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error)e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+        return decided.get() ? !conjunction : conjunction;
+    }
+
+    /**
+     * Evaluates the given invariable, in parallel if it is or contains a
+     * large composite.
+     */
+    static boolean invariant(Invariable invariable, ExecutorService executor)
+    {
+        if (invariable instanceof CompositeInvariable)
+            return ((CompositeInvariable)invariable).invariant(executor);
+        if (invariable instanceof Binding<?>)
+            return ((Binding<?>)invariable).invariant(executor);
+        return invariable.invariant();
     }
 
+    /**
+     * Visits each component once, collecting the violations of those that
+     * fail, without duplicate violating invariables.
+     */
     @Override
     public Iterable<? extends Entry<? extends Invariable, Set<String>>> getViolations()
     {
-        return violations;
+        Map<Invariable, Entry<? extends Invariable, Set<String>>> failures = null;
+        for (Invariable component : components)
+        {
+            if (!component.invariant())
+            {
+                for (Entry<? extends Invariable, Set<String>> violation : component.getViolations())
+                {
+                    if (failures == null)
+                        failures = new LinkedHashMap<Invariable, Entry<? extends Invariable, Set<String>>>();
+                    if (!failures.containsKey(violation.getKey()))
+                        failures.put(violation.getKey(), violation);
+                }
+            }
+        }
+        return failures == null ? noViolations : unmodifiableCollection(failures.values());
     }
-}
\ No newline at end of file
+}
@@ -22,6 +22,7 @@ import lombok.Data;
 
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import com.google.common.base.Supplier;
 import com.google.common.collect.Iterators;
 
 @Data
@@ -32,25 +33,37 @@ public class Delta<T extends Binding<T>> implements Iterable<T>
     
     public boolean unchangedExcept(Function<T, ?> accessor)
     {
-        return unchangedExcept(singleton(accessor));
+        final BindingClass<T> table = before.getBindingClass();
+        return table.hasMasks()
+            ? unchangedExcept(table, table.getMask(accessor))
+            : unchangedExcept(singleton(accessor));
     }
     
     @SuppressWarnings("unchecked")
     public boolean unchangedExcept(Function<T, ?> accessor1, Function<T, ?> accessor2)
     {
-        return unchangedExcept(asList(accessor1, accessor2));
+        final BindingClass<T> table = before.getBindingClass();
+        return table.hasMasks()
+            ? unchangedExcept(table, table.getMask(accessor1) | table.getMask(accessor2))
+            : unchangedExcept(asList(accessor1, accessor2));
     }
     
     @SuppressWarnings("unchecked")
     public boolean unchangedExcept(Function<T, ?> accessor1, Function<T, ?> accessor2, Function<T, ?> accessor3)
     {
-        return unchangedExcept(asList(accessor1, accessor2, accessor3));
+        final BindingClass<T> table = before.getBindingClass();
+        return table.hasMasks()
+            ? unchangedExcept(table, table.getMask(accessor1) | table.getMask(accessor2) | table.getMask(accessor3))
+            : unchangedExcept(asList(accessor1, accessor2, accessor3));
     }
     
     @SuppressWarnings("unchecked")
     public boolean unchangedExcept(Function<T, ?> accessor1, Function<T, ?> accessor2, Function<T, ?> accessor3, Function<T, ?> accessor4)
     {
-        return unchangedExcept(asList(accessor1, accessor2, accessor3, accessor4));
+        final BindingClass<T> table = before.getBindingClass();
+        return table.hasMasks()
+            ? unchangedExcept(table, table.getMask(accessor1) | table.getMask(accessor2) | table.getMask(accessor3) | table.getMask(accessor4))
+            : unchangedExcept(asList(accessor1, accessor2, accessor3, accessor4));
     }
     
     public boolean unchangedExcept(Function<T, ?>... accessors)
@@ -60,6 +73,14 @@ public class Delta<T extends Binding<T>> implements Iterable<T>
     
     public boolean unchangedExcept(Iterable<? extends Function<T, ?>> accessors)
     {
+        final BindingClass<T> table = before.getBindingClass();
+        if (table.hasMasks())
+        {
+            long except = 0;
+            for (Function<T, ?> accessor : accessors)
+                except |= table.getMask(accessor);
+            return unchangedExcept(table, except);
+        }
         return all(difference(before.getDataAccessors(), toSet(accessors)), new Predicate<Function<T, ?>>()
         {
             @Override
@@ -70,12 +91,45 @@ public class Delta<T extends Binding<T>> implements Iterable<T>
         });
     }
     
+    /**
+     * Compares the data slots not in the given mask, identity first.
+     */
+    private boolean unchangedExcept(BindingClass<T> table, long except)
+    {
+        for (long slots = table.getDataMask() & ~except; slots != 0; slots &= slots - 1)
+        {
+            if (!after.slotEquals(Long.numberOfTrailingZeros(slots), before))
+                return false;
+        }
+        return true;
+    }
+    
     @SuppressWarnings("unchecked")
     public Iterator<T> iterator()
     {
         return Iterators.forArray(before, after);
     }
 
+    /**
+     * Returns the change from the given before-state to the after-state
+     * constructed by the given supplier. While the after-state is
+     * constructed, any of its invariants that held for the before-state is
+     * not evaluated again if the members it reads are unchanged, as declared
+     * by the {@link BindingClass#dependencies} of the class.
+     */
+    public static <T extends Binding<T>> Delta<T> derive(T before, Supplier<? extends T> after)
+    {
+        final Binding<?> previous = Binding.setBasis(before);
+        try
+        {
+            return new Delta<T>(before, after.get());
+        }
+        finally
+        {
+            Binding.setBasis(previous);
+        }
+    }
+
     /**
      * Returns a set of {@link Delta}s that relate the bindings in the
      * <code>before</code> parameter to the bindings in the
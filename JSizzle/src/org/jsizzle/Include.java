@@ -9,5 +9,14 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.SOURCE)
 public @interface Include
 {
-
+    /**
+     * Whether the members expanded from the included schema are read
+     * through getters that delegate to the included binding, rather than
+     * copied into fields. This saves a field per member in each binding,
+     * but the members can then only be read through their getters (such as
+     * <code>getName()</code>) and access functions, in the schema as well as
+     * outside it. Delegated members are only expanded further, into schemas
+     * that include this one, if they are constructor arguments.
+     */
+    boolean delegate() default false;
 }
@@ -0,0 +1,20 @@
+package org.jsizzle;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a schema method that derives an index from the binding's members,
+ * such as a map grouping or counting them, so that invariants can look
+ * things up rather than scanning. The method is computed on its first call
+ * and its result cached in the binding, which is immutable. It must return
+ * an object, which should not be modified.
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.SOURCE)
+public @interface Index
+{
+
+}
@@ -9,4 +9,13 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.SOURCE)
 public @interface Initialise
 {
+    /**
+     * Whether the value is computed on first access rather than in the
+     * constructor. A lazy initialiser is made a public accessor method,
+     * caching the value, instead of a field; so it may not initialise a
+     * declared or included field. Comparing or checking the binding
+     * computes the value, which takes part in equality and invariants like
+     * any other member. It is computed at most once.
+     */
+    boolean lazy() default false;
 }
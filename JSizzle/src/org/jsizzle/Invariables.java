@@ -1,8 +1,7 @@
 package org.jsizzle;
 
 import static com.google.common.base.Predicates.notNull;
-import static com.google.common.collect.Iterables.all;
-import static com.google.common.collect.Iterables.any;
+import static com.google.common.collect.Iterables.concat;
 import static com.google.common.collect.Iterables.filter;
 import static com.google.common.collect.Iterables.isEmpty;
 import static com.google.common.collect.Iterables.transform;
@@ -13,7 +12,9 @@ import static java.util.Collections.singleton;
 
 import org.jcurry.AsFunction;
 
+import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
 import java.util.Set;
 import java.util.Map.Entry;
 
@@ -22,6 +23,11 @@ public class Invariables
     @AsFunction
     public static Invariable asInvariable(final Object from)
     {
+        if (from instanceof Binding<?>)
+        {
+            // Bindings of inert classes need never be checked
+            return ((Binding<?>)from).getBindingClass().isInert() ? null : (Invariable)from;
+        }
         if (from instanceof Invariable)
         {
             return (Invariable)from;
@@ -37,7 +43,8 @@ public class Invariables
         }
         else if (from instanceof Map<?, ?>)
         {
-            subData = ((Map<?, ?>)from).entrySet();
+            // Keys then values, to avoid walking entries
+            subData = concat(((Map<?, ?>)from).keySet(), ((Map<?, ?>)from).values());
         }
         else if (from instanceof Map.Entry<?, ?>)
         {
@@ -51,30 +58,69 @@ public class Invariables
         return isEmpty(subInvariables) ? null : and(subInvariables);
     }
 
-    @AsFunction
-    public static Invariable and(Iterable<? extends Invariable> invariables)
+    /**
+     * Whether the invariables in the given datum, as found by
+     * {@link #asInvariable}, all hold. Visits the datum directly rather than
+     * through views, so that checking data that holds allocates nothing
+     * beyond the iterators of its collections.
+     */
+    static boolean allHold(Object datum)
     {
-        return new CompositeInvariable(invariables)
+        if (datum instanceof Binding<?>)
         {
-            @Override
-            public boolean invariant()
+            final Binding<?> binding = (Binding<?>)datum;
+            return binding.getBindingClass().isInert() || binding.invariant();
+        }
+        if (datum instanceof Invariable)
+        {
+            return ((Invariable)datum).invariant();
+        }
+        if (datum instanceof List<?> && datum instanceof RandomAccess)
+        {
+            final List<?> list = (List<?>)datum;
+            for (int i = 0; i < list.size(); i++)
             {
-                return all(components, invariant);
-            }        
-        };
+                if (!allHold(list.get(i)))
+                    return false;
+            }
+        }
+        else if (datum instanceof Iterable<?>)
+        {
+            for (Object element : (Iterable<?>)datum)
+            {
+                if (!allHold(element))
+                    return false;
+            }
+        }
+        else if (datum != null && datum.getClass().isArray() && !datum.getClass().getComponentType().isPrimitive())
+        {
+            for (Object element : (Object[])datum)
+            {
+                if (!allHold(element))
+                    return false;
+            }
+        }
+        else if (datum instanceof Map<?, ?>)
+        {
+            return allHold(((Map<?, ?>)datum).keySet()) && allHold(((Map<?, ?>)datum).values());
+        }
+        else if (datum instanceof Map.Entry<?, ?>)
+        {
+            return allHold(((Map.Entry<?, ?>)datum).getKey()) && allHold(((Map.Entry<?, ?>)datum).getValue());
+        }
+        return true;
+    }
+
+    @AsFunction
+    public static Invariable and(Iterable<? extends Invariable> invariables)
+    {
+        return new CompositeInvariable(invariables, true);
     }
     
     @AsFunction
     public static Invariable or(Iterable<? extends Invariable> invariables)
     {
-        return new CompositeInvariable(invariables)
-        {
-            @Override
-            public boolean invariant()
-            {
-                return any(components, invariant);
-            }        
-        };
+        return new CompositeInvariable(invariables, false);
     }
     
     @AsFunction
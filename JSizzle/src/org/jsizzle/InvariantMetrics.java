@@ -0,0 +1,232 @@
+package org.jsizzle;
+
+import static java.util.Collections.unmodifiableList;
+
+import java.beans.ConstructorProperties;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counts the evaluations and failures of a schema's invariants, and the time
+ * spent evaluating them. Schema classes compiled with the system property
+ * <code>org.jsizzle.metrics</code> register their metrics in a static
+ * initialiser, and record each invariant evaluated by their constructor;
+ * otherwise no metrics code is generated at all.
+ * <p>
+ * Counters are striped by thread, so that concurrent constructors seldom
+ * contend. Metrics are exposed by {@link #snapshot()} and as a JMX MXBean
+ * for each schema.
+ */
+public final class InvariantMetrics implements InvariantMetricsMXBean
+{
+    private static final ConcurrentMap<Class<?>, InvariantMetrics> registry =
+        new ConcurrentHashMap<Class<?>, InvariantMetrics>();
+
+    /**
+     * The number of stripes, a power of two.
+     */
+    private static final int STRIPES = Math.min(64, Integer.highestOneBit(
+        Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    /**
+     * Counters recorded for each invariant: evaluations, failures and
+     * nanoseconds.
+     */
+    private static final int COUNTERS = 3;
+
+    /**
+     * Unused counters separating stripes, a cache line's worth, to avoid
+     * false sharing.
+     */
+    private static final int PADDING = 8;
+
+    /**
+     * The value of one invariant's counters at some moment.
+     */
+    public static class Snapshot
+    {
+        private final String schema;
+        private final String invariant;
+        private final long evaluations;
+        private final long failures;
+        private final long nanos;
+
+        @ConstructorProperties({"schema", "invariant", "evaluations", "failures", "nanos"})
+        public Snapshot(String schema, String invariant, long evaluations, long failures, long nanos)
+        {
+            this.schema = schema;
+            this.invariant = invariant;
+            this.evaluations = evaluations;
+            this.failures = failures;
+            this.nanos = nanos;
+        }
+
+        /**
+         * The name of the schema class.
+         */
+        public String getSchema()
+        {
+            return schema;
+        }
+
+        public String getInvariant()
+        {
+            return invariant;
+        }
+
+        public long getEvaluations()
+        {
+            return evaluations;
+        }
+
+        public long getFailures()
+        {
+            return failures;
+        }
+
+        /**
+         * The cumulative time spent evaluating the invariant.
+         */
+        public long getNanos()
+        {
+            return nanos;
+        }
+
+        @Override
+        public String toString()
+        {
+            return schema + "." + invariant + ": " + failures + "/" + evaluations + " failed in " + nanos + "ns";
+        }
+    }
+
+    private final Class<?> schema;
+    private final String[] invariants;
+    private final int stride;
+    private final AtomicLongArray counters;
+
+    private InvariantMetrics(Class<?> schema, String[] invariants)
+    {
+        this.schema = schema;
+        this.invariants = invariants;
+        this.stride = invariants.length * COUNTERS + PADDING;
+        this.counters = new AtomicLongArray(STRIPES * stride);
+    }
+
+    /**
+     * Returns the metrics of the given schema, whose invariants have the
+     * given names, registering them if necessary.
+     */
+    public static InvariantMetrics register(Class<?> schema, String... invariants)
+    {
+        final InvariantMetrics existing = registry.get(schema);
+        if (existing != null)
+            return existing;
+        final InvariantMetrics metrics = new InvariantMetrics(schema, invariants.clone());
+        final InvariantMetrics raced = registry.putIfAbsent(schema, metrics);
+        if (raced != null)
+            return raced;
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, metrics.getObjectName());
+        }
+        catch (JMException e)
+        {
+            // Metrics remain available from snapshot()
+        }
+        catch (SecurityException e)
+        {
+            // Metrics remain available from snapshot()
+        }
+        return metrics;
+    }
+
+    /**
+     * Returns the registered metrics of the given schema, or
+     * <code>null</code> if it was not compiled with metrics.
+     */
+    public static InvariantMetrics forSchema(Class<?> schema)
+    {
+        return registry.get(schema);
+    }
+
+    /**
+     * Records an evaluation of the given invariant, started at the given
+     * {@link System#nanoTime()}, and returns its result. Generated
+     * constructors call this as
+     * <code>record($invariantMetrics, i, System.nanoTime(), this.invariant())</code>,
+     * so that the invariant is timed by argument evaluation order. The
+     * metrics may be <code>null</code> if a binding is constructed during
+     * the class's static initialisation.
+     */
+    public static boolean record(InvariantMetrics metrics, int invariant, long start, boolean holds)
+    {
+        if (metrics != null)
+        {
+            final long elapsed = System.nanoTime() - start;
+            final int stripe = (int)Thread.currentThread().getId() & (STRIPES - 1);
+            final int base = stripe * metrics.stride + invariant * COUNTERS;
+            metrics.counters.incrementAndGet(base);
+            if (!holds)
+                metrics.counters.incrementAndGet(base + 1);
+            metrics.counters.addAndGet(base + 2, elapsed);
+        }
+        return holds;
+    }
+
+    /**
+     * Returns the metrics of all registered schemas.
+     */
+    public static List<Snapshot> snapshot()
+    {
+        final List<Snapshot> snapshot = new ArrayList<Snapshot>();
+        for (InvariantMetrics metrics : registry.values())
+            snapshot.addAll(metrics.getInvariants());
+        return unmodifiableList(snapshot);
+    }
+
+    public Class<?> getSchema()
+    {
+        return schema;
+    }
+
+    /**
+     * Returns the metrics of this schema's invariants, in declaration order.
+     * Counters are summed over stripes without locking, so a snapshot taken
+     * during construction may be slightly inconsistent.
+     */
+    @Override
+    public List<Snapshot> getInvariants()
+    {
+        final List<Snapshot> snapshot = new ArrayList<Snapshot>(invariants.length);
+        for (int i = 0; i < invariants.length; i++)
+        {
+            final long[] sums = new long[COUNTERS];
+            for (int stripe = 0; stripe < STRIPES; stripe++)
+            {
+                for (int counter = 0; counter < COUNTERS; counter++)
+                    sums[counter] += counters.get(stripe * stride + i * COUNTERS + counter);
+            }
+            snapshot.add(new Snapshot(schema.getName(), invariants[i], sums[0], sums[1], sums[2]));
+        }
+        return unmodifiableList(snapshot);
+    }
+
+    @Override
+    public void reset()
+    {
+        for (int i = 0; i < counters.length(); i++)
+            counters.set(i, 0);
+    }
+
+    private ObjectName getObjectName() throws JMException
+    {
+        return new ObjectName("org.jsizzle:type=InvariantMetrics,schema=" + ObjectName.quote(schema.getName()));
+    }
+}
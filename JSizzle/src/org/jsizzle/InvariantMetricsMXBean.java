@@ -0,0 +1,14 @@
+package org.jsizzle;
+
+import java.util.List;
+
+/**
+ * The management interface of a schema's invariant metrics, registered as
+ * <code>org.jsizzle:type=InvariantMetrics,schema=&lt;class name&gt;</code>.
+ */
+public interface InvariantMetricsMXBean
+{
+    List<InvariantMetrics.Snapshot> getInvariants();
+
+    void reset();
+}
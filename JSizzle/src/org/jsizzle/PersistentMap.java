@@ -0,0 +1,555 @@
+package org.jsizzle;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.Integer.bitCount;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.google.common.collect.Maps;
+
+/**
+ * An immutable hash array mapped trie. Updates return a new map sharing all
+ * but O(log n) of its structure with this one, and maps derived from one
+ * another compare equal quickly, skipping shared subtrees. Neither keys nor
+ * values may be null.
+ * <p>
+ * The {@link Map} mutators throw {@link UnsupportedOperationException}; use
+ * {@link #plus} and {@link #minus} instead.
+ */
+public final class PersistentMap<K, V> extends AbstractMap<K, V>
+{
+    private static final PersistentMap<Object, Object> EMPTY = new PersistentMap<Object, Object>(null, 0, 0);
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    /**
+     * The root node, or <code>null</code> if empty.
+     */
+    private final Node root;
+    private final int size;
+
+    /**
+     * The {@link Map#hashCode()}, maintained on update.
+     */
+    private final int hash;
+
+    private PersistentMap(Node root, int size, int hash)
+    {
+        this.root = root;
+        this.size = size;
+        this.hash = hash;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> empty()
+    {
+        return (PersistentMap<K, V>)EMPTY;
+    }
+
+    /**
+     * Returns a persistent map with the same entries as the given map, which
+     * is returned itself if it is already persistent.
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> copyOf(Map<? extends K, ? extends V> map)
+    {
+        if (map instanceof PersistentMap<?, ?>)
+            return (PersistentMap<K, V>)map;
+        return PersistentMap.<K, V>empty().plusAll(map);
+    }
+
+    /**
+     * Returns a map like this one, but mapping the given key to the given
+     * value.
+     */
+    public PersistentMap<K, V> plus(K key, V value)
+    {
+        checkNotNull(key);
+        checkNotNull(value);
+        final Change change = new Change();
+        final int keyHash = spread(key.hashCode());
+        final Node newRoot = root == null
+            ? BitmapNode.EMPTY.plus(0, keyHash, key, value, change)
+            : root.plus(0, keyHash, key, value, change);
+        if (newRoot == root)
+            return this;
+        if (change.previous == null)
+            return new PersistentMap<K, V>(newRoot, size + 1, hash + (key.hashCode() ^ value.hashCode()));
+        return new PersistentMap<K, V>(newRoot, size,
+                                       hash - (key.hashCode() ^ change.previous.hashCode()) + (key.hashCode() ^ value.hashCode()));
+    }
+
+    /**
+     * Returns a map like this one, but overridden by the entries of the
+     * given map.
+     */
+    public PersistentMap<K, V> plusAll(Map<? extends K, ? extends V> map)
+    {
+        PersistentMap<K, V> result = this;
+        for (Entry<? extends K, ? extends V> entry : map.entrySet())
+            result = result.plus(entry.getKey(), entry.getValue());
+        return result;
+    }
+
+    /**
+     * Returns a map like this one, but without the given key.
+     */
+    public PersistentMap<K, V> minus(Object key)
+    {
+        if (root == null || key == null)
+            return this;
+        final Change change = new Change();
+        final Node newRoot = root.minus(0, spread(key.hashCode()), key, change);
+        if (change.previous == null)
+            return this;
+        return new PersistentMap<K, V>(newRoot, size - 1, hash - (key.hashCode() ^ change.previous.hashCode()));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key)
+    {
+        return root == null || key == null ? null : (V)root.get(0, spread(key.hashCode()), key);
+    }
+
+    @Override
+    public boolean containsKey(Object key)
+    {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet()
+    {
+        return new AbstractSet<Entry<K, V>>()
+        {
+            @Override
+            public Iterator<Entry<K, V>> iterator()
+            {
+                return new EntryIterator<K, V>(root);
+            }
+
+            @Override
+            public int size()
+            {
+                return size;
+            }
+
+            @Override
+            public boolean contains(Object o)
+            {
+                if (!(o instanceof Entry<?, ?>))
+                    return false;
+                final Object value = get(((Entry<?, ?>)o).getKey());
+                return value != null && value.equals(((Entry<?, ?>)o).getValue());
+            }
+        };
+    }
+
+    /**
+     * Compares entries, skipping subtrees shared with the given map if it is
+     * also persistent.
+     */
+    @Override
+    public boolean equals(Object o)
+    {
+        if (o == this)
+            return true;
+        if (o instanceof PersistentMap<?, ?>)
+        {
+            final PersistentMap<?, ?> other = (PersistentMap<?, ?>)o;
+            return size == other.size && hash == other.hash && (root == null || root.equalTo(other.root));
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hash;
+    }
+
+    private static int spread(int hash)
+    {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * The value replaced or removed by an update, if any.
+     */
+    private static final class Change
+    {
+        Object previous;
+    }
+
+    private static abstract class Node
+    {
+        abstract Object get(int shift, int hash, Object key);
+
+        abstract Node plus(int shift, int hash, Object key, Object value, Change change);
+
+        /**
+         * Returns this node without the given key, or <code>null</code> if
+         * it would be empty.
+         */
+        abstract Node minus(int shift, int hash, Object key, Change change);
+
+        /**
+         * Compares the entries under this node with those under the given
+         * node at the same position. Tries of equal maps have the same shape.
+         */
+        abstract boolean equalTo(Node other);
+
+        /**
+         * Whether this node holds a single entry, which can be inlined in its
+         * parent to keep the trie's shape canonical. Likewise, a node holding
+         * only a collision node is replaced by it.
+         */
+        abstract boolean isSingleton();
+
+        /**
+         * The keys and values, or null keys and sub-nodes, of this node.
+         */
+        abstract Object[] array();
+    }
+
+    /**
+     * A node holding up to 32 entries or sub-nodes, indexed by the bits of
+     * the hash at its level. Entries are stored as key-value pairs in a
+     * compact array, with a null key marking a sub-node.
+     */
+    private static final class BitmapNode extends Node
+    {
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        final int bitmap;
+        final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array)
+        {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        @Override
+        Object get(int shift, int hash, Object key)
+        {
+            final int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0)
+                return null;
+            final int index = 2 * bitCount(bitmap & (bit - 1));
+            final Object k = array[index];
+            if (k == null)
+                return ((Node)array[index + 1]).get(shift + BITS, hash, key);
+            return key.equals(k) ? array[index + 1] : null;
+        }
+
+        @Override
+        Node plus(int shift, int hash, Object key, Object value, Change change)
+        {
+            final int bit = 1 << ((hash >>> shift) & MASK);
+            final int index = 2 * bitCount(bitmap & (bit - 1));
+            if ((bitmap & bit) == 0)
+            {
+                final Object[] newArray = new Object[array.length + 2];
+                System.arraycopy(array, 0, newArray, 0, index);
+                newArray[index] = key;
+                newArray[index + 1] = value;
+                System.arraycopy(array, index, newArray, index + 2, array.length - index);
+                return new BitmapNode(bitmap | bit, newArray);
+            }
+            final Object k = array[index];
+            final Object v = array[index + 1];
+            if (k == null)
+            {
+                final Node sub = ((Node)v).plus(shift + BITS, hash, key, value, change);
+                return sub == v ? this : with(index, null, sub);
+            }
+            if (key.equals(k))
+            {
+                if (value == v)
+                    return this;
+                change.previous = v;
+                return with(index, k, value);
+            }
+            return with(index, null, pair(shift + BITS, spread(k.hashCode()), k, v, hash, key, value));
+        }
+
+        @Override
+        Node minus(int shift, int hash, Object key, Change change)
+        {
+            final int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0)
+                return this;
+            final int index = 2 * bitCount(bitmap & (bit - 1));
+            final Object k = array[index];
+            final Object v = array[index + 1];
+            if (k == null)
+            {
+                final Node sub = ((Node)v).minus(shift + BITS, hash, key, change);
+                if (sub == v)
+                    return this;
+                if (sub == null)
+                    return without(bit, index);
+                if (sub.isSingleton())
+                    return with(index, sub.array()[0], sub.array()[1]);
+                if (sub.array().length == 2 && sub.array()[1] instanceof CollisionNode)
+                    return with(index, null, (Node)sub.array()[1]);
+                return with(index, null, sub);
+            }
+            if (!key.equals(k))
+                return this;
+            change.previous = v;
+            return without(bit, index);
+        }
+
+        private BitmapNode with(int index, Object key, Object value)
+        {
+            final Object[] newArray = array.clone();
+            newArray[index] = key;
+            newArray[index + 1] = value;
+            return new BitmapNode(bitmap, newArray);
+        }
+
+        private BitmapNode without(int bit, int index)
+        {
+            if (bitmap == bit)
+                return null;
+            final Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, index);
+            System.arraycopy(array, index + 2, newArray, index, array.length - index - 2);
+            return new BitmapNode(bitmap ^ bit, newArray);
+        }
+
+        @Override
+        boolean equalTo(Node other)
+        {
+            if (other == this)
+                return true;
+            if (!(other instanceof BitmapNode) || ((BitmapNode)other).bitmap != bitmap)
+                return false;
+            final Object[] otherArray = ((BitmapNode)other).array;
+            for (int i = 0; i < array.length; i += 2)
+            {
+                if (array[i] == null)
+                {
+                    if (otherArray[i] != null || !((Node)array[i + 1]).equalTo((Node)otherArray[i + 1]))
+                        return false;
+                }
+                else if (!array[i].equals(otherArray[i]) || !array[i + 1].equals(otherArray[i + 1]))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        boolean isSingleton()
+        {
+            return array.length == 2 && array[0] != null;
+        }
+
+        @Override
+        Object[] array()
+        {
+            return array;
+        }
+    }
+
+    /**
+     * A node holding entries whose keys have the same full hash.
+     */
+    private static final class CollisionNode extends Node
+    {
+        final int hash;
+        final Object[] array;
+
+        CollisionNode(int hash, Object[] array)
+        {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        @Override
+        Object get(int shift, int hash, Object key)
+        {
+            final int index = indexOf(key);
+            return index < 0 ? null : array[index + 1];
+        }
+
+        @Override
+        Node plus(int shift, int hash, Object key, Object value, Change change)
+        {
+            if (hash != this.hash)
+            {
+                // Push this node down a level, beside the new entry
+                return new BitmapNode(1 << ((this.hash >>> shift) & MASK), new Object[] {null, this})
+                    .plus(shift, hash, key, value, change);
+            }
+            final int index = indexOf(key);
+            if (index < 0)
+            {
+                final Object[] newArray = new Object[array.length + 2];
+                System.arraycopy(array, 0, newArray, 0, array.length);
+                newArray[array.length] = key;
+                newArray[array.length + 1] = value;
+                return new CollisionNode(hash, newArray);
+            }
+            if (array[index + 1] == value)
+                return this;
+            change.previous = array[index + 1];
+            final Object[] newArray = array.clone();
+            newArray[index + 1] = value;
+            return new CollisionNode(hash, newArray);
+        }
+
+        @Override
+        Node minus(int shift, int hash, Object key, Change change)
+        {
+            final int index = indexOf(key);
+            if (index < 0)
+                return this;
+            change.previous = array[index + 1];
+            if (array.length == 2)
+                return null;
+            final Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, index);
+            System.arraycopy(array, index + 2, newArray, index, array.length - index - 2);
+            return new CollisionNode(hash, newArray);
+        }
+
+        private int indexOf(Object key)
+        {
+            for (int i = 0; i < array.length; i += 2)
+            {
+                if (key.equals(array[i]))
+                    return i;
+            }
+            return -1;
+        }
+
+        @Override
+        boolean equalTo(Node other)
+        {
+            if (other == this)
+                return true;
+            if (!(other instanceof CollisionNode) || ((CollisionNode)other).array.length != array.length)
+                return false;
+            // Entries may be in any order
+            for (int i = 0; i < array.length; i += 2)
+            {
+                if (!array[i + 1].equals(other.get(0, hash, array[i])))
+                    return false;
+            }
+            return true;
+        }
+
+        @Override
+        boolean isSingleton()
+        {
+            return array.length == 2;
+        }
+
+        @Override
+        Object[] array()
+        {
+            return array;
+        }
+    }
+
+    /**
+     * Returns a node holding two entries with distinct keys.
+     */
+    private static Node pair(int shift, int hash1, Object key1, Object value1, int hash2, Object key2, Object value2)
+    {
+        if (hash1 == hash2)
+            return new CollisionNode(hash1, new Object[] {key1, value1, key2, value2});
+        final Change ignored = new Change();
+        return BitmapNode.EMPTY.plus(shift, hash1, key1, value1, ignored).plus(shift, hash2, key2, value2, ignored);
+    }
+
+    /**
+     * Visits the entries of a trie depth first.
+     */
+    private static final class EntryIterator<K, V> implements Iterator<Entry<K, V>>
+    {
+        private final Deque<Object[]> arrays = new ArrayDeque<Object[]>();
+        private final Deque<Integer> indices = new ArrayDeque<Integer>();
+        private Object[] array;
+        private int index;
+
+        EntryIterator(Node root)
+        {
+            array = root == null ? new Object[0] : root.array();
+            advance();
+        }
+
+        /**
+         * Moves to the next entry, descending into and returning from
+         * sub-nodes.
+         */
+        private void advance()
+        {
+            while (true)
+            {
+                if (index < array.length)
+                {
+                    if (array[index] != null)
+                        return;
+                    arrays.push(array);
+                    indices.push(index + 2);
+                    array = ((Node)array[index + 1]).array();
+                    index = 0;
+                }
+                else if (arrays.isEmpty())
+                {
+                    return;
+                }
+                else
+                {
+                    array = arrays.pop();
+                    index = indices.pop();
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return index < array.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Entry<K, V> next()
+        {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            final Entry<K, V> entry = Maps.immutableEntry((K)array[index], (V)array[index + 1]);
+            index += 2;
+            advance();
+            return entry;
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
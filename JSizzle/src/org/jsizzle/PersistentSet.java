@@ -0,0 +1,100 @@
+package org.jsizzle;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+
+/**
+ * An immutable set backed by a {@link PersistentMap}, sharing structure with
+ * the sets it is derived from. Elements may not be null.
+ */
+public final class PersistentSet<E> extends AbstractSet<E>
+{
+    private static final PersistentSet<Object> EMPTY = new PersistentSet<Object>(PersistentMap.<Object, Boolean>empty(), 0);
+
+    private final PersistentMap<E, Boolean> map;
+
+    /**
+     * The {@link java.util.Set#hashCode()}, maintained on update.
+     */
+    private final int hash;
+
+    private PersistentSet(PersistentMap<E, Boolean> map, int hash)
+    {
+        this.map = map;
+        this.hash = hash;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentSet<E> empty()
+    {
+        return (PersistentSet<E>)EMPTY;
+    }
+
+    /**
+     * Returns a persistent set of the given elements, which is returned
+     * itself if it is already a persistent set.
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentSet<E> copyOf(Iterable<? extends E> elements)
+    {
+        if (elements instanceof PersistentSet<?>)
+            return (PersistentSet<E>)elements;
+        return PersistentSet.<E>empty().plusAll(elements);
+    }
+
+    public PersistentSet<E> plus(E element)
+    {
+        final PersistentMap<E, Boolean> newMap = map.plus(element, Boolean.TRUE);
+        return newMap == map ? this : new PersistentSet<E>(newMap, hash + element.hashCode());
+    }
+
+    public PersistentSet<E> plusAll(Iterable<? extends E> elements)
+    {
+        PersistentSet<E> result = this;
+        for (E element : elements)
+            result = result.plus(element);
+        return result;
+    }
+
+    public PersistentSet<E> minus(Object element)
+    {
+        final PersistentMap<E, Boolean> newMap = map.minus(element);
+        return newMap == map ? this : new PersistentSet<E>(newMap, hash - element.hashCode());
+    }
+
+    @Override
+    public boolean contains(Object o)
+    {
+        return map.containsKey(o);
+    }
+
+    @Override
+    public Iterator<E> iterator()
+    {
+        return map.keySet().iterator();
+    }
+
+    @Override
+    public int size()
+    {
+        return map.size();
+    }
+
+    /**
+     * Compares elements, skipping subtrees shared with the given set if it is
+     * also persistent.
+     */
+    @Override
+    public boolean equals(Object o)
+    {
+        if (o instanceof PersistentSet<?>)
+            return map.equals(((PersistentSet<?>)o).map);
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hash;
+    }
+}
@@ -0,0 +1,214 @@
+package org.jsizzle;
+
+import static com.google.common.base.Objects.equal;
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list held in a 32-way trie. Appending and replacing elements
+ * return a new list sharing all but O(log n) of its structure with this one,
+ * and lists derived from one another compare equal quickly, skipping shared
+ * subtrees.
+ * <p>
+ * The {@link java.util.List} mutators throw
+ * {@link UnsupportedOperationException}; use {@link #plus} and {@link #with}
+ * instead.
+ */
+public final class PersistentVector<E> extends AbstractList<E> implements RandomAccess
+{
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    private static final PersistentVector<Object> EMPTY = new PersistentVector<Object>(new Object[WIDTH], 0, 0, 1);
+
+    /**
+     * The root node. Leaves hold elements, and other nodes hold the nodes
+     * below them; all have {@link #WIDTH} slots.
+     */
+    private final Object[] root;
+
+    /**
+     * The bit position of the root's index into an element's index.
+     */
+    private final int shift;
+    private final int size;
+
+    /**
+     * The {@link java.util.List#hashCode()}, maintained on update.
+     */
+    private final int hash;
+
+    private PersistentVector(Object[] root, int shift, int size, int hash)
+    {
+        this.root = root;
+        this.shift = shift;
+        this.size = size;
+        this.hash = hash;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentVector<E> empty()
+    {
+        return (PersistentVector<E>)EMPTY;
+    }
+
+    /**
+     * Returns a persistent list of the given elements, which is returned
+     * itself if it is already a persistent vector.
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentVector<E> copyOf(Iterable<? extends E> elements)
+    {
+        if (elements instanceof PersistentVector<?>)
+            return (PersistentVector<E>)elements;
+        return PersistentVector.<E>empty().plusAll(elements);
+    }
+
+    /**
+     * Returns a list like this one, with the given element appended.
+     */
+    public PersistentVector<E> plus(E element)
+    {
+        final int newHash = 31 * hash + hashOf(element);
+        if (size == 1 << (shift + BITS))
+        {
+            // Full, so grow a new root
+            final Object[] newRoot = new Object[WIDTH];
+            newRoot[0] = root;
+            newRoot[1] = path(shift, element);
+            return new PersistentVector<E>(newRoot, shift + BITS, size + 1, newHash);
+        }
+        return new PersistentVector<E>(append(root, shift, element), shift, size + 1, newHash);
+    }
+
+    public PersistentVector<E> plusAll(Iterable<? extends E> elements)
+    {
+        PersistentVector<E> result = this;
+        for (E element : elements)
+            result = result.plus(element);
+        return result;
+    }
+
+    /**
+     * Returns a list like this one, with the element at the given index
+     * replaced.
+     */
+    public PersistentVector<E> with(int index, E element)
+    {
+        checkElementIndex(index, size);
+        final Object previous = get(index);
+        if (previous == element)
+            return this;
+        final int newHash = hash + (hashOf(element) - hashOf(previous)) * power(31, size - 1 - index);
+        return new PersistentVector<E>(replace(root, shift, index, element), shift, size, newHash);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index)
+    {
+        checkElementIndex(index, size);
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS)
+            node = (Object[])node[(index >>> level) & MASK];
+        return (E)node[index & MASK];
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Compares elements, skipping subtrees shared with the given list if it
+     * is also persistent.
+     */
+    @Override
+    public boolean equals(Object o)
+    {
+        if (o == this)
+            return true;
+        if (o instanceof PersistentVector<?>)
+        {
+            final PersistentVector<?> other = (PersistentVector<?>)o;
+            // Vectors of the same size have the same shape
+            return size == other.size && hash == other.hash && equalNodes(root, other.root, shift);
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hash;
+    }
+
+    private Object[] append(Object[] node, int level, E element)
+    {
+        final Object[] newNode = node.clone();
+        final int slot = (size >>> level) & MASK;
+        if (level == 0)
+            newNode[slot] = element;
+        else if (node[slot] == null)
+            newNode[slot] = path(level - BITS, element);
+        else
+            newNode[slot] = append((Object[])node[slot], level - BITS, element);
+        return newNode;
+    }
+
+    /**
+     * Returns a new branch down to a leaf holding only the given element.
+     */
+    private static Object[] path(int level, Object element)
+    {
+        final Object[] node = new Object[WIDTH];
+        node[0] = level == 0 ? element : path(level - BITS, element);
+        return node;
+    }
+
+    private static Object[] replace(Object[] node, int level, int index, Object element)
+    {
+        final Object[] newNode = node.clone();
+        final int slot = (index >>> level) & MASK;
+        newNode[slot] = level == 0 ? element : replace((Object[])node[slot], level - BITS, index, element);
+        return newNode;
+    }
+
+    private static boolean equalNodes(Object[] node, Object[] other, int level)
+    {
+        if (node == other)
+            return true;
+        if (node == null || other == null)
+            return false;
+        for (int slot = 0; slot < WIDTH; slot++)
+        {
+            if (level == 0
+                ? !equal(node[slot], other[slot])
+                : !equalNodes((Object[])node[slot], (Object[])other[slot], level - BITS))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hashOf(Object element)
+    {
+        return element == null ? 0 : element.hashCode();
+    }
+
+    private static int power(int base, int exponent)
+    {
+        int result = 1;
+        for (; exponent > 0; exponent >>= 1, base *= base)
+        {
+            if ((exponent & 1) != 0)
+                result *= base;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,120 @@
+package org.jsizzle;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A policy deciding which calls of an instrumented implementation are checked
+ * against their specification. Calls are counted per schema; the first calls
+ * (the warm-up) are always checked, and after that a proportion given by the
+ * schema's rate.
+ * <p>
+ * Sampling is deterministic, so that a rate of 0.25 checks exactly every
+ * fourth call. When a call is not sampled, the instrumentation should not
+ * take any specification snapshots at all.
+ */
+public class Sampling
+{
+    /**
+     * Checks every call.
+     */
+    public static final Sampling always = new Sampling(1);
+
+    private final double rate;
+    private final Map<Class<?>, Double> rates;
+    private final long warmUp;
+    private final ConcurrentMap<Class<?>, AtomicLong> calls = new ConcurrentHashMap<Class<?>, AtomicLong>();
+
+    /**
+     * Constructs a policy checking the given proportion of calls, between 0
+     * and 1, for all schemas.
+     */
+    public Sampling(double rate)
+    {
+        this(checkRate(rate), Collections.<Class<?>, Double>emptyMap(), 0);
+    }
+
+    private Sampling(double rate, Map<Class<?>, Double> rates, long warmUp)
+    {
+        this.rate = rate;
+        this.rates = rates;
+        this.warmUp = warmUp;
+    }
+
+    /**
+     * Returns a policy like this one, but checking the given proportion of
+     * calls for the given schema. Call counts are not shared with this
+     * policy.
+     */
+    public Sampling withRate(Class<?> schema, double rate)
+    {
+        final Map<Class<?>, Double> rates = new HashMap<Class<?>, Double>(this.rates);
+        rates.put(schema, checkRate(rate));
+        return new Sampling(this.rate, rates, warmUp);
+    }
+
+    /**
+     * Returns a policy like this one, but always checking the first given
+     * number of calls for each schema. Call counts are not shared with this
+     * policy.
+     */
+    public Sampling withWarmUp(long calls)
+    {
+        if (calls < 0)
+            throw new IllegalArgumentException("Negative warm-up " + calls);
+        return new Sampling(rate, rates, calls);
+    }
+
+    /**
+     * Returns the policy given by the system properties
+     * <code>org.jsizzle.sampling.rate</code> (default 1) and
+     * <code>org.jsizzle.sampling.warmup</code> (default 0).
+     */
+    public static Sampling fromSystemProperties()
+    {
+        return new Sampling(Double.parseDouble(System.getProperty("org.jsizzle.sampling.rate", "1")))
+            .withWarmUp(Long.parseLong(System.getProperty("org.jsizzle.sampling.warmup", "0")));
+    }
+
+    public double getRate(Class<?> schema)
+    {
+        final Double schemaRate = rates.get(schema);
+        return schemaRate == null ? rate : schemaRate;
+    }
+
+    /**
+     * Counts a call to be checked against the given schema, and returns
+     * whether it should be checked.
+     */
+    public boolean sample(Class<?> schema)
+    {
+        final long call = counter(schema).incrementAndGet();
+        if (call <= warmUp)
+            return true;
+        // Check the calls at which the expected number of checks goes up
+        final double schemaRate = getRate(schema);
+        final long sampled = call - warmUp;
+        return (long)(sampled * schemaRate) != (long)((sampled - 1) * schemaRate);
+    }
+
+    private AtomicLong counter(Class<?> schema)
+    {
+        final AtomicLong counter = calls.get(schema);
+        if (counter != null)
+            return counter;
+        final AtomicLong newCounter = new AtomicLong();
+        final AtomicLong existing = calls.putIfAbsent(schema, newCounter);
+        return existing == null ? newCounter : existing;
+    }
+
+    private static double checkRate(double rate)
+    {
+        if (!(rate >= 0 && rate <= 1))
+            throw new IllegalArgumentException("Sampling rate " + rate + " is not between 0 and 1");
+        return rate;
+    }
+}
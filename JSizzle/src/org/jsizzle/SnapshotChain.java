@@ -0,0 +1,74 @@
+package org.jsizzle;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Chains the specification snapshots taken by an instrumented
+ * implementation, so that the after-state of one checked call is reused as
+ * the before-state of the next, together with its memoized invariant
+ * verdict. Calls that do not change the specified state reuse a single
+ * snapshot as both their before and after-states.
+ * <p>
+ * The implementation must call {@link #mutated()} whenever its specified
+ * state changes, whether or not the change is instrumented; a snapshot is
+ * only reused if there has been no mutation since it was taken.
+ */
+public final class SnapshotChain<S extends Binding<S>>
+{
+    private static final class Link<S>
+    {
+        final S snapshot;
+        final long generation;
+
+        Link(S snapshot, long generation)
+        {
+            this.snapshot = snapshot;
+            this.generation = generation;
+        }
+    }
+
+    private final Supplier<? extends S> snapshots;
+    private final AtomicLong generation = new AtomicLong();
+    private volatile Link<S> last;
+
+    /**
+     * Constructs a chain taking snapshots from the given supplier.
+     */
+    public SnapshotChain(Supplier<? extends S> snapshots)
+    {
+        this.snapshots = snapshots;
+    }
+
+    /**
+     * Notes that the specified state has changed.
+     */
+    public void mutated()
+    {
+        generation.incrementAndGet();
+    }
+
+    public long getGeneration()
+    {
+        return generation.get();
+    }
+
+    /**
+     * Returns a snapshot of the current state. This is the last snapshot
+     * returned, and so the after-state of the last checked call, if there
+     * has been no mutation since it was taken.
+     */
+    public S snapshot()
+    {
+        final Link<S> link = last;
+        // Read the generation first, so that a concurrent mutation leaves a
+        // new snapshot stale rather than wrongly current
+        final long current = generation.get();
+        if (link != null && link.generation == current)
+            return link.snapshot;
+        final S snapshot = snapshots.get();
+        last = new Link<S>(snapshot, current);
+        return snapshot;
+    }
+}
@@ -0,0 +1,197 @@
+package org.jsizzle;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Checks operation schemas on background threads, so that the calling thread
+ * only pays for capturing its before and after bindings. Since bindings are
+ * immutable, the schema can be constructed and checked later.
+ * <p>
+ * At most a fixed number of checks are pending at once. When that capacity
+ * is reached, further checks are handled according to an {@link Overflow}
+ * policy.
+ */
+public class Verifier
+{
+    /**
+     * Receives the results of failed checks.
+     */
+    public interface Sink
+    {
+        /**
+         * Called with a checked invariable whose invariant does not hold.
+         */
+        void violated(Invariable invariable);
+
+        /**
+         * Called when constructing or checking an invariable throws.
+         */
+        void failed(RuntimeException e);
+    }
+
+    /**
+     * What to do with a check submitted at full capacity.
+     */
+    public enum Overflow
+    {
+        /** Wait for capacity. */
+        BLOCK,
+        /** Discard the check. */
+        DROP,
+        /** Wait for capacity for a sample of checks, and discard the rest. */
+        SAMPLE
+    }
+
+    private final ExecutorService executor;
+    private final Semaphore capacity;
+    private final Overflow overflow;
+    private final Sampling overflowSampling;
+    private final Sink sink;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Object drainLock = new Object();
+    private int pending;
+
+    /**
+     * Constructs a verifier with the given number of daemon threads. With
+     * the SAMPLE policy, overflowing checks are sampled at the given rate.
+     */
+    public Verifier(int threads, int capacity, Overflow overflow, double overflowRate, Sink sink)
+    {
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                                               new LinkedBlockingQueue<Runnable>(), daemonThreads);
+        this.capacity = new Semaphore(capacity);
+        this.overflow = overflow;
+        this.overflowSampling = new Sampling(overflowRate);
+        this.sink = sink;
+    }
+
+    public Verifier(int threads, int capacity, Overflow overflow, Sink sink)
+    {
+        this(threads, capacity, overflow, overflow == Overflow.SAMPLE ? 0.1 : 1, sink);
+    }
+
+    /**
+     * Submits a check. The given supplier is called on a background thread
+     * to construct the invariable, typically an operation schema over
+     * bindings already captured by the caller, whose invariant is then
+     * checked.
+     *
+     * @return whether the check was accepted, rather than dropped
+     */
+    public boolean verify(Supplier<? extends Invariable> check)
+    {
+        if (!capacity.tryAcquire())
+        {
+            if (overflow == Overflow.DROP
+                    || (overflow == Overflow.SAMPLE && !overflowSampling.sample(Verifier.class)))
+            {
+                dropped.incrementAndGet();
+                return false;
+            }
+            capacity.acquireUninterruptibly();
+        }
+        synchronized (drainLock)
+        {
+            pending++;
+        }
+        try
+        {
+            executor.execute(new Check(check));
+        }
+        catch (RejectedExecutionException e)
+        {
+            completed();
+            throw e;
+        }
+        return true;
+    }
+
+    private class Check implements Runnable
+    {
+        private final Supplier<? extends Invariable> check;
+
+        Check(Supplier<? extends Invariable> check)
+        {
+            this.check = check;
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                final Invariable invariable = check.get();
+                if (!invariable.invariant())
+                    sink.violated(invariable);
+            }
+            catch (RuntimeException e)
+            {
+                sink.failed(e);
+            }
+            finally
+            {
+                completed();
+            }
+        }
+    }
+
+    private void completed()
+    {
+        capacity.release();
+        synchronized (drainLock)
+        {
+            if (--pending == 0)
+                drainLock.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until all accepted checks have completed.
+     */
+    public void drain() throws InterruptedException
+    {
+        synchronized (drainLock)
+        {
+            while (pending > 0)
+                drainLock.wait();
+        }
+    }
+
+    /**
+     * Returns the number of checks dropped due to overflow.
+     */
+    public long getDropped()
+    {
+        return dropped.get();
+    }
+
+    /**
+     * Stops accepting checks. Accepted checks are still completed.
+     */
+    public void shutdown()
+    {
+        executor.shutdown();
+    }
+
+    private static final ThreadFactory daemonThreads = new ThreadFactory()
+    {
+        private final AtomicLong count = new AtomicLong();
+
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            final Thread thread = new Thread(runnable, "jsizzle-verifier-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+}
@@ -0,0 +1,254 @@
+package org.jsizzle;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.unmodifiableList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Map.Entry;
+
+/**
+ * The failure of an invariable's invariant, reported as the schema class,
+ * invariant names and path of each failing nested binding. Nothing is walked
+ * or formatted until the violations or message are asked for, so a report
+ * can be thrown cheaply and discarded.
+ * <p>
+ * In fast reject mode, reports are thrown without a stack trace. This is
+ * enabled by the system property <code>org.jsizzle.fastReject</code>, or by
+ * {@link #setFastReject(boolean)}.
+ */
+public class ViolationReport extends IllegalStateException
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The maximum length of a reported path. Violations nested more deeply
+     * are reported at the deepest path, with their own invariable.
+     */
+    public static final int MAX_DEPTH = 8;
+
+    private static volatile boolean fastReject = Boolean.getBoolean("org.jsizzle.fastReject");
+
+    /**
+     * A failing binding, or other invariable, within the reported one.
+     */
+    public static class Violation
+    {
+        private final Class<?> schema;
+        private final Set<String> invariants;
+        private final List<String> path;
+
+        Violation(Class<?> schema, Set<String> invariants, List<String> path)
+        {
+            this.schema = schema;
+            this.invariants = invariants;
+            this.path = path;
+        }
+
+        public Class<?> getSchema()
+        {
+            return schema;
+        }
+
+        public Set<String> getInvariants()
+        {
+            return invariants;
+        }
+
+        /**
+         * The member names (or #slot, if unnamed) and element indices leading
+         * from the reported invariable to the failing one; empty if they are
+         * the same.
+         */
+        public List<String> getPath()
+        {
+            return path;
+        }
+
+        @Override
+        public String toString()
+        {
+            final StringBuilder message = new StringBuilder();
+            message.append(invariants).append(" failed in ").append(schema.getSimpleName());
+            if (!path.isEmpty())
+            {
+                message.append(" at ");
+                for (int i = 0; i < path.size(); i++)
+                {
+                    final String step = path.get(i);
+                    if (i > 0 && !step.startsWith("["))
+                        message.append('.');
+                    message.append(step);
+                }
+            }
+            return message.toString();
+        }
+    }
+
+    private final transient Invariable invariable;
+    private transient volatile List<Violation> violations;
+    private volatile String message;
+
+    public ViolationReport(Invariable invariable)
+    {
+        this.invariable = invariable;
+    }
+
+    public static boolean isFastReject()
+    {
+        return fastReject;
+    }
+
+    /**
+     * Sets whether reports are thrown without a stack trace.
+     */
+    public static void setFastReject(boolean fastReject)
+    {
+        ViolationReport.fastReject = fastReject;
+    }
+
+    /**
+     * Called by the constructor; skipped in fast reject mode, since filling
+     * in the stack trace dominates the cost of throwing.
+     */
+    @Override
+    public synchronized Throwable fillInStackTrace()
+    {
+        return fastReject ? this : super.fillInStackTrace();
+    }
+
+    public Invariable getInvariable()
+    {
+        return invariable;
+    }
+
+    public Class<?> getSchema()
+    {
+        return invariable.getClass();
+    }
+
+    /**
+     * Returns the failing bindings and other invariables, found on first
+     * call. Each is reported once, at the first path at which it is found.
+     */
+    public List<Violation> getViolations()
+    {
+        List<Violation> result = violations;
+        if (result == null)
+        {
+            final List<Violation> found = new ArrayList<Violation>();
+            walk(invariable, Collections.<String>emptyList(), new IdentityHashMap<Object, Object>(), found);
+            violations = result = unmodifiableList(found);
+        }
+        return result;
+    }
+
+    @Override
+    public String getMessage()
+    {
+        String result = message;
+        if (result == null)
+            message = result = getViolations().toString();
+        return result;
+    }
+
+    /**
+     * Visits the failing invariables within the given failing invariable, in
+     * member order.
+     */
+    private static void walk(Invariable failing, List<String> path, Map<Object, Object> visited, List<Violation> found)
+    {
+        if (visited.put(failing, failing) != null)
+            return;
+        if (failing instanceof Binding<?> && path.size() < MAX_DEPTH)
+        {
+            final Binding<?> binding = (Binding<?>)failing;
+            final Set<String> own = binding.getOwnViolations();
+            if (!own.isEmpty())
+                found.add(new Violation(binding.getClass(), own, path));
+            walkMembers(binding, path, visited, found);
+        }
+        else if (failing instanceof CompositeInvariable)
+        {
+            for (Invariable component : ((CompositeInvariable)failing).components)
+            {
+                if (!component.invariant())
+                    walk(component, path, visited, found);
+            }
+        }
+        else
+        {
+            for (Entry<? extends Invariable, Set<String>> violation : failing.getViolations())
+            {
+                if (failing == violation.getKey() || visited.put(violation.getKey(), violation) == null)
+                    found.add(new Violation(violation.getKey().getClass(), violation.getValue(), path));
+            }
+        }
+    }
+
+    private static <T extends Binding<T>> void walkMembers(Binding<T> binding, List<String> path,
+                                                           Map<Object, Object> visited, List<Violation> found)
+    {
+        final BindingClass<T> bindingClass = binding.getBindingClass();
+        for (int slot = 0; slot < bindingClass.size(); slot++)
+        {
+            if (bindingClass.isInvariable(slot))
+            {
+                final Object member = binding.get(slot);
+                final String name = bindingClass.getName(slot);
+                walkDatum(member, append(path, name == null ? "#" + slot : name), visited, found);
+            }
+        }
+    }
+
+    /**
+     * Visits the given datum as {@link Invariables#asInvariable} would see
+     * it, labelling elements by their position.
+     */
+    private static void walkDatum(Object datum, List<String> path, Map<Object, Object> visited, List<Violation> found)
+    {
+        final Invariable invariable = Invariables.asInvariable(datum);
+        if (invariable == null || invariable.invariant())
+            return;
+        if (datum instanceof Invariable || path.size() >= MAX_DEPTH)
+        {
+            walk(invariable, path, visited, found);
+            return;
+        }
+        final Iterator<?> elements;
+        if (datum instanceof Iterable<?>)
+        {
+            elements = ((Iterable<?>)datum).iterator();
+        }
+        else if (datum instanceof Map<?, ?>)
+        {
+            elements = ((Map<?, ?>)datum).entrySet().iterator();
+        }
+        else if (datum instanceof Map.Entry<?, ?>)
+        {
+            final Map.Entry<?, ?> entry = (Map.Entry<?, ?>)datum;
+            walkDatum(entry.getKey(), append(path, "key"), visited, found);
+            walkDatum(entry.getValue(), append(path, "value"), visited, found);
+            return;
+        }
+        else
+        {
+            elements = asList((Object[])datum).iterator();
+        }
+        for (int i = 0; elements.hasNext(); i++)
+            walkDatum(elements.next(), append(path, "[" + i + "]"), visited, found);
+    }
+
+    private static List<String> append(List<String> path, String step)
+    {
+        final List<String> appended = new ArrayList<String>(path.size() + 1);
+        appended.addAll(path);
+        appended.add(step);
+        return unmodifiableList(appended);
+    }
+}
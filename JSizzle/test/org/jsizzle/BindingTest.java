@@ -3,18 +3,45 @@ package org.jsizzle;
 import static com.google.common.base.Functions.compose;
 import static com.google.common.collect.Iterables.isEmpty;
 import static com.google.common.collect.Maps.immutableEntry;
+import static java.util.Arrays.asList;
+import static java.util.Collections.newSetFromMap;
 import static java.util.Collections.singleton;
 import static java.util.Collections.singletonList;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
 import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
 import static org.jcurry.ValueObjects.list;
 import static org.jsizzle.InvariablesTest.bad;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import junit.framework.AssertionFailedError;
 
 import org.jcurry.AsFunction;
 import org.junit.Test;
 
+import com.google.common.base.Function;
+import com.google.common.collect.Ordering;
+
 public class BindingTest
 {
     @Test
@@ -68,6 +95,205 @@ public class BindingTest
         withSubBindingViolation.checkInvariant();
     }
     
+    @Test
+    public void testSharedBindingClass()
+    {
+        final WithSharedClass other = new WithSharedClass();
+        assertSame(withSharedClass.getBindingClass(), other.getBindingClass());
+        assertEquals("datum", withSharedClass.getBindingClass().getName(0));
+        assertEquals(singletonList("Fred"), withSharedClass.getData());
+        assertTrue(withSharedClass.invariant());
+    }
+    
+    @Test
+    public void testAddedAccessorsShareBindingClass()
+    {
+        assertSame(withDatum.getBindingClass(), new WithDatum().getBindingClass());
+        assertSame(withInclusion.getBindingClass(), new WithInclusion().getBindingClass());
+        assertEquals(2, withInclusion.getBindingClass().size());
+        assertSame(BindingClass.of(WithDatum.class), BindingClass.of(WithDatum.class));
+    }
+    
+    @Test
+    public void testMemoizedInvariant()
+    {
+        final WithCountedDatum binding = new WithCountedDatum();
+        assertFalse(binding.invariant());
+        assertFalse(binding.invariant());
+        assertEquals(1, binding.datum.invariantCount);
+        assertEquals(list(binding.getViolations()), list(binding.getViolations()));
+        assertEquals(1, binding.datum.violationsCount);
+    }
+    
+    @Test
+    public void testStructuralEquality()
+    {
+        final WithEquality fred = new WithEquality("Fred");
+        assertEquals(new WithEquality("Fred"), fred);
+        assertEquals(new WithEquality("Fred").hashCode(), fred.hashCode());
+        assertFalse(fred.equals(new WithEquality("Barney")));
+        assertFalse(fred.equals(null));
+        assertFalse(fred.equals(withDatum));
+    }
+    
+    @Test
+    public void testSlotAccess()
+    {
+        final WithSlots fred = new WithSlots("Fred", 3);
+        assertEquals(new WithSlots("Fred", 3), fred);
+        assertEquals(new WithSlots("Fred", 3).hashCode(), fred.hashCode());
+        assertFalse(fred.equals(new WithSlots("Fred", 4)));
+        assertEquals(asList("Fred", 3), fred.getData());
+        assertTrue(new Delta<WithSlots>(fred, new WithSlots("Barney", 3)).unchangedExcept(WithSlots.getName));
+        assertFalse(new Delta<WithSlots>(fred, new WithSlots("Fred", 4)).unchangedExcept(WithSlots.getName));
+    }
+    
+    @Test
+    public void testInvariableFreeDatumSkipped()
+    {
+        final WithFreeDatum binding = new WithFreeDatum();
+        assertTrue(binding.invariant());
+        assertTrue(binding.getBindingClass().isInert());
+        assertNull(Invariables.asInvariable(binding));
+        assertFalse(withEquality.getBindingClass().isInert());
+    }
+    
+    @Test
+    public void testIntern()
+    {
+        final WithEquality fred = Bindings.intern(new WithEquality("Fred"));
+        assertTrue(fred.isInterned());
+        assertSame(fred, Bindings.intern(new WithEquality("Fred")));
+        assertFalse(fred.equals(Bindings.intern(new WithEquality("Barney"))));
+        assertEquals(new WithEquality("Fred"), fred);
+        assertFalse(new WithEquality("Fred").isInterned());
+    }
+    
+    @Test
+    public void testLazyVerdictIndependentOfAccessOrder()
+    {
+        final WithLazy checked = new WithLazy("Fred");
+        assertFalse(checked.invariant());
+        assertFalse(isEmpty(checked.getViolations()));
+        assertEquals(1, checked.computations.get());
+        
+        final WithLazy reported = new WithLazy("Fred");
+        assertFalse(isEmpty(reported.getViolations()));
+        assertFalse(reported.invariant());
+        
+        final WithLazy accessed = new WithLazy("Fred");
+        assertSame(bad, accessed.derived());
+        assertFalse(accessed.invariant());
+        
+        final WithLazy compared = new WithLazy("Fred");
+        assertEquals(checked, compared);
+        assertEquals(checked.hashCode(), compared.hashCode());
+        assertFalse(compared.invariant());
+        assertEquals(1, compared.computations.get());
+    }
+    
+    @Test
+    public void testLazyComputedOnce() throws Exception
+    {
+        final WithLazy lazy = new WithLazy("Fred");
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try
+        {
+            final List<Future<Invariable>> results = new ArrayList<Future<Invariable>>();
+            for (int i = 0; i < 8; i++)
+            {
+                results.add(executor.submit(new Callable<Invariable>()
+                {
+                    @Override
+                    public Invariable call() throws Exception
+                    {
+                        start.await();
+                        return lazy.derived();
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<Invariable> result : results)
+                assertSame(bad, result.get());
+            assertEquals(1, lazy.computations.get());
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+    
+    @Test
+    public void testFreeze()
+    {
+        final Set<String> names = new HashSet<String>(asList("Fred", "Barney"));
+        final Set<String> frozen = Bindings.freeze(names);
+        names.add("Wilma");
+        assertEquals(2, frozen.size());
+        assertSame(frozen, Bindings.freeze(frozen));
+        final PersistentVector<String> persistent = PersistentVector.<String>empty().plus("Fred");
+        assertSame(persistent, Bindings.freeze((List<String>)persistent));
+        assertEquals(asList("Fred", null), Bindings.freeze(asList("Fred", null)));
+        assertNull(Bindings.freeze((Map<String, String>)null));
+    }
+    
+    @Test
+    public void testFreezeWithNulls()
+    {
+        final Set<String> small = new HashSet<String>(asList("Fred", null));
+        assertEquals(small, Bindings.freeze(small));
+        final Set<Integer> large = new HashSet<Integer>();
+        for (int i = 0; i < 20; i++)
+            large.add(i);
+        assertEquals(large, Bindings.freeze(large));
+        large.add(null);
+        assertEquals(large, Bindings.freeze(large));
+        
+        // As for sorted sets allowing null
+        final SortedSet<String> sorted = new TreeSet<String>(Ordering.natural().nullsFirst());
+        sorted.addAll(asList("Fred", null));
+        assertEquals(sorted, Bindings.freeze(sorted));
+        assertEquals(sorted, Bindings.freeze((Set<String>)sorted));
+    }
+    
+    @Test
+    public void testFreezeMaps()
+    {
+        final Map<String, Integer> small = new HashMap<String, Integer>();
+        small.put("Fred", 1);
+        small.put(null, null);
+        final Map<String, Integer> frozen = Bindings.freeze(small);
+        assertEquals(small, frozen);
+        assertEquals(small.hashCode(), frozen.hashCode());
+        assertTrue(frozen.containsKey(null));
+        assertSame(frozen, Bindings.freeze(frozen));
+        final Map<Integer, Integer> large = new HashMap<Integer, Integer>();
+        for (int i = 0; i < 20; i++)
+            large.put(i, i);
+        assertEquals(large, Bindings.freeze(large));
+        large.put(20, null);
+        assertEquals(large, Bindings.freeze(large));
+    }
+    
+    @Test
+    public void testFreezeKeepsDistinctIdentities()
+    {
+        for (int size : asList(2, 20))
+        {
+            final Set<String> set = newSetFromMap(new IdentityHashMap<String, Boolean>());
+            final Map<String, Integer> map = new IdentityHashMap<String, Integer>();
+            for (int i = 0; i < size; i++)
+            {
+                set.add(new String("Fred"));
+                map.put(new String("Fred"), i);
+            }
+            assertEquals(size, Bindings.freeze(set).size());
+            assertEquals(size, Bindings.freeze(map).size());
+            assertEquals(size, Bindings.freeze(map.keySet()).size());
+        }
+    }
+    
     @Test
     public void testWithInclusion()
     {
@@ -77,6 +303,13 @@ public class BindingTest
         withDatum.checkInvariant();
     }
     
+    @Test
+    public void testExpandedDataNotCompared()
+    {
+        assertTrue(Arrays.equals(new int[] {1}, withInclusion.getBindingClass().getEqualitySlots()));
+        assertTrue(withInclusion.bindingEquals(new WithInclusion()));
+    }
+    
     @Test(expected = AssertionFailedError.class)
     public void testViolatingInclusion()
     {
@@ -88,6 +321,56 @@ public class BindingTest
         withViolatingInclusion.checkInvariant();
     }
     
+    @Test
+    public void testViolationReport()
+    {
+        try
+        {
+            withListViolation.checkInvariant();
+            fail();
+        }
+        catch (ViolationReport e)
+        {
+            assertSame(withListViolation, e.getInvariable());
+            assertEquals(1, e.getViolations().size());
+            final ViolationReport.Violation violation = e.getViolations().get(0);
+            assertSame(withInvariantViolation.getClass(), violation.getSchema());
+            assertEquals(singleton("invariantViolation"), violation.getInvariants());
+            assertEquals(asList("elements", "[1]", "#0"), violation.getPath());
+            assertTrue(e.getMessage().contains("at elements[1].#0"));
+            assertTrue(e.getStackTrace().length > 0);
+        }
+    }
+    
+    @Test
+    public void testFastReject()
+    {
+        ViolationReport.setFastReject(true);
+        try
+        {
+            withListViolation.checkInvariant();
+            fail();
+        }
+        catch (ViolationReport e)
+        {
+            assertEquals(0, e.getStackTrace().length);
+        }
+        finally
+        {
+            ViolationReport.setFastReject(false);
+        }
+    }
+    
+    @Test
+    public void testDeclaredViolations()
+    {
+        assertTrue(new WithManyInvariants().invariant());
+        final WithManyInvariants violating = new WithManyInvariants(3, 64, 65);
+        assertFalse(violating.invariant());
+        assertEquals(asList("i3", "i64", "i65"), list(violating.getOwnViolations()));
+        assertEquals(singleton("i1"), new WithManyInvariants(1).getViolations().iterator().next().getValue());
+    }
+    
     public static final MockBinding empty = new MockBinding() {};
     
     public static final class WithDatum extends Binding<WithDatum>
@@ -101,6 +384,263 @@ public class BindingTest
     }
     public static final WithDatum withDatum = new WithDatum();
     
+    public static final class WithSharedClass extends Binding<WithSharedClass>
+    {
+        @AsFunction
+        private String datum = "Fred";
+        
+        private static final BindingClass<WithSharedClass> bindingClass =
+            BindingClass.of(WithSharedClass.class).add("datum", getDatum, Inclusion.DIRECT);
+        
+        public WithSharedClass()
+        {
+            super(bindingClass);
+        }
+    }
+    public static final WithSharedClass withSharedClass = new WithSharedClass();
+    
+    public static final class CountingInvariable implements Invariable
+    {
+        int invariantCount, violationsCount;
+        
+        @Override
+        public boolean invariant()
+        {
+            invariantCount++;
+            return false;
+        }
+        
+        @Override
+        public Iterable<? extends Entry<? extends Invariable, Set<String>>> getViolations()
+        {
+            violationsCount++;
+            return singleton(immutableEntry(this, singleton("counted")));
+        }
+    }
+    
+    public static final class WithCountedDatum extends Binding<WithCountedDatum>
+    {
+        @AsFunction
+        private CountingInvariable datum = new CountingInvariable();
+        
+        {
+            addAccessor(getDatum, Inclusion.DIRECT);
+        }
+    }
+    
+    public static final class WithEquality extends Binding<WithEquality>
+    {
+        @AsFunction
+        private final String datum;
+        
+        private static final BindingClass<WithEquality> bindingClass =
+            BindingClass.of(WithEquality.class).add("datum", getDatum, Inclusion.DIRECT);
+        
+        public WithEquality(String datum)
+        {
+            super(bindingClass);
+            this.datum = datum;
+        }
+        
+        @Override
+        public boolean equals(Object other)
+        {
+            return bindingEquals(other);
+        }
+        
+        @Override
+        public int hashCode()
+        {
+            return bindingHashCode();
+        }
+    }
+    
+    public static final WithEquality withEquality = new WithEquality("Fred");
+    
+    /**
+     * Caches a lazy member, as generated schema classes do.
+     */
+    public static final class WithLazy extends Binding<WithLazy>
+    {
+        @AsFunction
+        private final String name;
+        private volatile Invariable $derived;
+        final AtomicInteger computations = new AtomicInteger();
+        
+        private static final BindingClass<WithLazy> bindingClass = BindingClass.of(WithLazy.class)
+            .add("name", getName, Inclusion.DIRECT)
+            .add("derived", new Function<WithLazy, Invariable>()
+            {
+                @Override
+                public Invariable apply(WithLazy binding)
+                {
+                    return binding.derived();
+                }
+            }, Inclusion.LAZY);
+        
+        public WithLazy(String name)
+        {
+            super(bindingClass);
+            this.name = name;
+        }
+        
+        public final Invariable derived()
+        {
+            Invariable derived = this.$derived;
+            if (derived == null)
+            {
+                synchronized (this)
+                {
+                    derived = this.$derived;
+                    if (derived == null)
+                        this.$derived = derived = this.$compute$derived();
+                }
+            }
+            return derived;
+        }
+        
+        private Invariable $compute$derived()
+        {
+            computations.incrementAndGet();
+            try
+            {
+                // Give concurrent callers a chance to race
+                Thread.sleep(20);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            return bad;
+        }
+        
+        @Override
+        protected Object get(int slot)
+        {
+            switch (slot)
+            {
+            case 0: return name;
+            case 1: return derived();
+            default: return super.get(slot);
+            }
+        }
+        
+        @Override
+        public boolean equals(Object other)
+        {
+            return bindingEquals(other);
+        }
+        
+        @Override
+        public int hashCode()
+        {
+            return bindingHashCode();
+        }
+    }
+    
+    /**
+     * Reads its members by slot, as generated schema classes do.
+     */
+    public static final class WithSlots extends Binding<WithSlots>
+    {
+        @AsFunction
+        private final String name;
+        @AsFunction
+        private final int size;
+        
+        private static final BindingClass<WithSlots> bindingClass =
+            BindingClass.of(WithSlots.class).add("name", getName, Inclusion.DIRECT).add("size", getSize, Inclusion.DIRECT);
+        
+        public WithSlots(String name, int size)
+        {
+            super(bindingClass);
+            this.name = name;
+            this.size = size;
+        }
+        
+        @Override
+        protected Object get(int slot)
+        {
+            switch (slot)
+            {
+            case 0: return name;
+            case 1: return size;
+            default: return super.get(slot);
+            }
+        }
+        
+        @Override
+        protected boolean slotEquals(int slot, WithSlots other)
+        {
+            switch (slot)
+            {
+            case 1: return size == other.size;
+            default: return super.slotEquals(slot, other);
+            }
+        }
+        
+        @Override
+        protected int slotHashCode(int slot)
+        {
+            switch (slot)
+            {
+            case 1: return size;
+            default: return super.slotHashCode(slot);
+            }
+        }
+        
+        @Override
+        public boolean equals(Object other)
+        {
+            return bindingEquals(other);
+        }
+        
+        @Override
+        public int hashCode()
+        {
+            return bindingHashCode();
+        }
+    }
+    
+    public static final class WithFreeDatum extends Binding<WithFreeDatum>
+    {
+        @AsFunction
+        private final Invariable datum = bad;
+        
+        private static final BindingClass<WithFreeDatum> bindingClass = BindingClass.of(WithFreeDatum.class)
+            .add("datum", getDatum, Inclusion.DIRECT, false)
+            .invariants();
+        
+        public WithFreeDatum()
+        {
+            super(bindingClass);
+        }
+    }
+    
+    /**
+     * Declares more invariants than fit in the violation bits.
+     */
+    public static final class WithManyInvariants extends Binding<WithManyInvariants>
+    {
+        private static final BindingClass<WithManyInvariants> bindingClass =
+            BindingClass.of(WithManyInvariants.class).invariants(names(66));
+        
+        public WithManyInvariants(int... violated)
+        {
+            super(bindingClass);
+            for (int invariant : violated)
+                addViolation(invariant);
+        }
+        
+        private static String[] names(int count)
+        {
+            final String[] names = new String[count];
+            for (int i = 0; i < count; i++)
+                names[i] = "i" + i;
+            return names;
+        }
+    }
+    
     public static final MockBinding withInvariantViolation = new MockBinding()
     {
         {
@@ -153,4 +693,19 @@ public class BindingTest
         }
     };
     public static final WithViolatingInclusion withViolatingInclusion = new WithViolatingInclusion();
+    
+    public static final class WithListViolation extends Binding<WithListViolation>
+    {
+        @AsFunction
+        private final List<Binding<?>> elements = asList(withDatum, withSubBindingViolation);
+        
+        private static final BindingClass<WithListViolation> bindingClass =
+            BindingClass.of(WithListViolation.class).add("elements", getElements, Inclusion.DIRECT);
+        
+        public WithListViolation()
+        {
+            super(bindingClass);
+        }
+    }
+    public static final WithListViolation withListViolation = new WithListViolation();
 }
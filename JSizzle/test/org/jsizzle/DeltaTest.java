@@ -2,16 +2,26 @@ package org.jsizzle;
 
 import static com.google.common.base.Functions.constant;
 import static com.google.common.base.Functions.identity;
+import static java.util.Arrays.asList;
 import static java.util.Collections.emptySet;
 import static java.util.Collections.singleton;
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
 import static org.jsizzle.Delta.deltas;
 
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Set;
 
+import org.jcurry.AsFunction;
+import org.jsizzle.Binding.Inclusion;
 import org.junit.Test;
 
+import com.google.common.base.Function;
+import com.google.common.base.Supplier;
+
 
 public class DeltaTest
 {
@@ -48,4 +58,466 @@ public class DeltaTest
     {
         assertEquals(singleton(new Delta<MockBinding>(fred, barney)), deltas(singleton(fred), singleton(barney), constant(1)));
     }
+
+    @Test
+    public void unchangedExceptComparesOtherData()
+    {
+        final Delta<Pair> delta = new Delta<Pair>(new Pair("Fred", "Wilma"), new Pair("Fred", "Betty"));
+        assertTrue(delta.unchangedExcept(Pair.getSecond));
+        assertTrue(delta.unchangedExcept(Pair.getFirst, Pair.getSecond));
+        assertFalse(delta.unchangedExcept(Pair.getFirst));
+        assertFalse(new Xi<Pair>(delta.before, delta.after).invariant());
+        assertTrue(new Xi<Pair>(delta.before, new Pair("Fred", "Wilma")).invariant());
+    }
+    
+    @Test
+    public void delegatedLayoutMatchesCopiedLayout()
+    {
+        final Delegated delegated = new Delegated("Fred", 3, "Wilma");
+        final Copied copied = new Copied("Fred", 3, "Wilma");
+        assertEquals(copied.getData(), delegated.getData());
+        assertEquals("Fred", Delegated.getName.apply(delegated));
+        assertEquals(new Delegated("Fred", 3, "Wilma"), delegated);
+        assertEquals(copied.hashCode(), delegated.hashCode());
+        assertFalse(delegated.equals(new Delegated("Barney", 3, "Wilma")));
+        
+        final Delta<Delegated> delegatedRenamed = new Delta<Delegated>(delegated, new Delegated("Barney", 3, "Wilma"));
+        final Delta<Copied> copiedRenamed = new Delta<Copied>(copied, new Copied("Barney", 3, "Wilma"));
+        assertTrue(delegatedRenamed.unchangedExcept(Delegated.getName));
+        assertTrue(copiedRenamed.unchangedExcept(Copied.getName));
+        assertFalse(delegatedRenamed.unchangedExcept(Delegated.getSize));
+        assertFalse(copiedRenamed.unchangedExcept(Copied.getSize));
+        assertFalse(delegatedRenamed.unchangedExcept(Delegated.getPartner));
+        assertFalse(copiedRenamed.unchangedExcept(Copied.getPartner));
+    }
+    
+    @Test
+    public void deriveReusesUnchangedInvariants()
+    {
+        final Measured before = new Measured("Fred", 3);
+        Measured.named = Measured.small = 0;
+        final Delta<Measured> delta = Delta.derive(before, supplier("Fred", 4));
+        assertTrue(delta.after.invariant());
+        assertEquals(0, Measured.named);
+        assertEquals(1, Measured.small);
+    }
+    
+    @Test
+    public void deriveEvaluatesChangedInvariants()
+    {
+        final Measured before = new Measured("Fred", 3);
+        Measured.named = Measured.small = 0;
+        assertFalse(Delta.derive(before, supplier("", 4)).after.invariant());
+        assertEquals(1, Measured.named);
+        new Measured("Fred", 3);
+        assertEquals(2, Measured.named);
+    }
+    
+    @Test
+    public void deriveEvaluatesViolatedInvariants()
+    {
+        final Measured before = new Measured("", 3);
+        Measured.named = Measured.small = 0;
+        assertFalse(Delta.derive(before, supplier("", 4)).after.invariant());
+        assertEquals(1, Measured.named);
+    }
+    
+    @Test
+    public void deferredEvaluatesInvariantsOnce()
+    {
+        Measured.named = Measured.small = 0;
+        final Measured deferred = Bindings.deferred(supplier("", 4));
+        assertEquals(0, Measured.named);
+        assertFalse(deferred.invariant());
+        assertEquals(singleton("named"), deferred.getOwnViolations());
+        assertEquals(1, Measured.named);
+        assertEquals(1, Measured.small);
+    }
+    
+    @Test
+    public void deferredOnlyWhileConstructing()
+    {
+        Bindings.deferred(supplier("Fred", 3));
+        Measured.named = 0;
+        new Measured("Fred", 3);
+        assertEquals(1, Measured.named);
+    }
+    
+    @Test
+    public void indexComputedOnceAndCached()
+    {
+        Indexed.computed = 0;
+        final Indexed indexed = new Indexed("Fred", 3);
+        assertEquals(1, Indexed.computed);
+        assertSame(indexed.letters(), indexed.letters());
+        assertEquals(1, Indexed.computed);
+    }
+    
+    @Test
+    public void indexNotCompared()
+    {
+        Indexed.computed = 0;
+        final Indexed unindexed = Bindings.deferred(new Supplier<Indexed>()
+        {
+            @Override
+            public Indexed get()
+            {
+                return new Indexed("Fred", 3);
+            }
+        });
+        final Indexed indexed = new Indexed("Fred", 3);
+        assertEquals(unindexed, indexed);
+        assertEquals(unindexed.hashCode(), indexed.hashCode());
+        assertEquals(asList((Object)"Fred", 3), indexed.getData());
+        assertEquals(1, Indexed.computed);
+    }
+    
+    @Test
+    public void deriveReusesInvariantsCallingIndex()
+    {
+        final Indexed before = new Indexed("Fred", 3);
+        Indexed.computed = 0;
+        assertTrue(Delta.derive(before, indexedSupplier("Fred", 4)).after.invariant());
+        assertEquals(0, Indexed.computed);
+        assertFalse(Delta.derive(before, indexedSupplier("Betty", 4)).after.invariant());
+        assertEquals(1, Indexed.computed);
+    }
+    
+    private static Supplier<Indexed> indexedSupplier(final String name, final Integer size)
+    {
+        return new Supplier<Indexed>()
+        {
+            @Override
+            public Indexed get()
+            {
+                return new Indexed(name, size);
+            }
+        };
+    }
+    
+    private static Supplier<Measured> supplier(final String name, final Integer size)
+    {
+        return new Supplier<Measured>()
+        {
+            @Override
+            public Measured get()
+            {
+                return new Measured(name, size);
+            }
+        };
+    }
+    
+    /**
+     * Constructed as by a generated schema class, whose first invariant
+     * reads only the name and whose second has unknown dependencies.
+     */
+    public static final class Measured extends Binding<Measured>
+    {
+        static int named, small;
+        
+        @AsFunction
+        private final String name;
+        @AsFunction
+        private final Integer size;
+        
+        private static final BindingClass<Measured> bindingClass = BindingClass.of(Measured.class)
+            .add("name", getName, Inclusion.DIRECT)
+            .add("size", getSize, Inclusion.DIRECT)
+            .invariants("named", "small")
+            .dependencies(0x1L, -1L);
+        
+        public Measured(String name, Integer size)
+        {
+            super(bindingClass);
+            this.name = name;
+            this.size = size;
+            if (!deferInvariants())
+                evaluateInvariants();
+        }
+        
+        @Override
+        protected void evaluateInvariants()
+        {
+            if (!heldBefore(0) && !named())
+                addViolation("named");
+            if (!heldBefore(1) && !small())
+                addViolation("small");
+        }
+        
+        private boolean named()
+        {
+            named++;
+            return name.length() > 0;
+        }
+        
+        private boolean small()
+        {
+            small++;
+            return size < 10;
+        }
+    }
+    
+    /**
+     * Constructed as by a generated schema class with an index of the
+     * letters in its name, whose invariant calls the index and so reads
+     * only the name.
+     */
+    public static final class Indexed extends Binding<Indexed>
+    {
+        static int computed;
+        
+        @AsFunction
+        private final String name;
+        @AsFunction
+        private final Integer size;
+        private volatile Set<Character> $letters;
+        
+        private static final BindingClass<Indexed> bindingClass = BindingClass.of(Indexed.class)
+            .add("name", getName, Inclusion.DIRECT)
+            .add("size", getSize, Inclusion.DIRECT)
+            .invariants("distinctLetters")
+            .dependencies(0x1L);
+        
+        public Indexed(String name, Integer size)
+        {
+            super(bindingClass);
+            this.name = name;
+            this.size = size;
+            if (!deferInvariants())
+                evaluateInvariants();
+        }
+        
+        @Override
+        protected void evaluateInvariants()
+        {
+            if (!heldBefore(0) && !distinctLetters())
+                addViolation(0);
+        }
+        
+        public final Set<Character> letters()
+        {
+            Set<Character> letters = this.$letters;
+            if (letters == null)
+            {
+                synchronized (this)
+                {
+                    letters = this.$letters;
+                    if (letters == null)
+                        this.$letters = letters = this.$compute$letters();
+                }
+            }
+            return letters;
+        }
+        
+        private Set<Character> $compute$letters()
+        {
+            computed++;
+            final Set<Character> letters = new HashSet<Character>();
+            for (char letter : name.toCharArray())
+                letters.add(letter);
+            return letters;
+        }
+        
+        private boolean distinctLetters()
+        {
+            return letters().size() == name.length();
+        }
+        
+        @Override
+        public boolean equals(Object other)
+        {
+            return bindingEquals(other);
+        }
+        
+        @Override
+        public int hashCode()
+        {
+            return bindingHashCode();
+        }
+    }
+    
+    /**
+     * A schema included by {@link Copied} and {@link Delegated}.
+     */
+    public static final class Named extends Binding<Named>
+    {
+        @AsFunction
+        private final String name;
+        @AsFunction
+        private final Integer size;
+        
+        private static final BindingClass<Named> bindingClass = BindingClass.of(Named.class)
+            .add("name", getName, Inclusion.DIRECT)
+            .add("size", getSize, Inclusion.DIRECT);
+        
+        public Named(String name, Integer size)
+        {
+            super(bindingClass);
+            this.name = name;
+            this.size = size;
+        }
+        
+        public String getName()
+        {
+            return name;
+        }
+        
+        public Integer getSize()
+        {
+            return size;
+        }
+        
+        @Override
+        public boolean equals(Object other)
+        {
+            return bindingEquals(other);
+        }
+        
+        @Override
+        public int hashCode()
+        {
+            return bindingHashCode();
+        }
+    }
+    
+    /**
+     * Constructed as by a generated schema class including {@link Named},
+     * whose members are copied into fields.
+     */
+    public static final class Copied extends Binding<Copied>
+    {
+        @AsFunction
+        private final Named named;
+        @AsFunction
+        private final String name;
+        @AsFunction
+        private final Integer size;
+        @AsFunction
+        private final String partner;
+        
+        private static final BindingClass<Copied> bindingClass = BindingClass.of(Copied.class)
+            .add("named", getNamed, Inclusion.INCLUDED)
+            .add("name", getName, Inclusion.EXPANDED)
+            .add("size", getSize, Inclusion.EXPANDED)
+            .add("partner", getPartner, Inclusion.DIRECT);
+        
+        public Copied(String name, Integer size, String partner)
+        {
+            super(bindingClass);
+            this.named = new Named(name, size);
+            this.name = name;
+            this.size = size;
+            this.partner = partner;
+        }
+        
+        @Override
+        public boolean equals(Object other)
+        {
+            return bindingEquals(other);
+        }
+        
+        @Override
+        public int hashCode()
+        {
+            return bindingHashCode();
+        }
+    }
+    
+    /**
+     * Constructed as by a generated schema class including {@link Named}
+     * with <code>@Include(delegate = true)</code>, whose members are read
+     * through getters delegating to the included binding.
+     */
+    public static final class Delegated extends Binding<Delegated>
+    {
+        @AsFunction
+        private final Named named;
+        @AsFunction
+        private final String partner;
+        
+        public static final Function<Delegated, String> getName = new Function<Delegated, String>()
+        {
+            @Override
+            public String apply(Delegated delegated)
+            {
+                return delegated.getName();
+            }
+        };
+        
+        public static final Function<Delegated, Integer> getSize = new Function<Delegated, Integer>()
+        {
+            @Override
+            public Integer apply(Delegated delegated)
+            {
+                return delegated.getSize();
+            }
+        };
+        
+        private static final BindingClass<Delegated> bindingClass = BindingClass.of(Delegated.class)
+            .add("named", getNamed, Inclusion.INCLUDED)
+            .add("name", getName, Inclusion.EXPANDED)
+            .add("size", getSize, Inclusion.EXPANDED)
+            .add("partner", getPartner, Inclusion.DIRECT);
+        
+        public Delegated(String name, Integer size, String partner)
+        {
+            super(bindingClass);
+            this.named = new Named(name, size);
+            this.partner = partner;
+        }
+        
+        public final String getName()
+        {
+            return this.named.getName();
+        }
+        
+        public final Integer getSize()
+        {
+            return this.named.getSize();
+        }
+        
+        @Override
+        protected Object get(int slot)
+        {
+            switch (slot)
+            {
+            case 0: return named;
+            case 1: return getName();
+            case 2: return getSize();
+            case 3: return partner;
+            default: return super.get(slot);
+            }
+        }
+        
+        @Override
+        public boolean equals(Object other)
+        {
+            return bindingEquals(other);
+        }
+        
+        @Override
+        public int hashCode()
+        {
+            return bindingHashCode();
+        }
+    }
+    
+    public static final class Pair extends Binding<Pair>
+    {
+        @AsFunction
+        private final String first;
+        @AsFunction
+        private final String second;
+        
+        private static final BindingClass<Pair> bindingClass = BindingClass.of(Pair.class)
+            .add("first", getFirst, Inclusion.DIRECT)
+            .add("second", getSecond, Inclusion.DIRECT);
+        
+        public Pair(String first, String second)
+        {
+            super(bindingClass);
+            this.first = first;
+            this.second = second;
+        }
+    }
 }
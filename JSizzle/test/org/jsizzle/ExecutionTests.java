@@ -5,7 +5,7 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
-@SuiteClasses({BindingTest.class, DeltaTest.class, InvariablesTest.class})
+@SuiteClasses({BindingTest.class, DeltaTest.class, InvariablesTest.class, InvariantMetricsTest.class, PersistentCollectionsTest.class, SamplingTest.class, SnapshotChainTest.class, VerifierTest.class})
 public class ExecutionTests
 {
 }
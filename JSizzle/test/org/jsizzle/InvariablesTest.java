@@ -6,8 +6,10 @@ import static com.google.common.collect.Iterables.size;
 import static com.google.common.collect.Maps.immutableEntry;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptySet;
+import static java.util.Collections.nCopies;
 import static java.util.Collections.singleton;
 import static java.util.Collections.singletonMap;
+import static java.util.concurrent.Executors.newFixedThreadPool;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNull;
@@ -17,9 +19,12 @@ import static org.jsizzle.Invariables.asInvariable;
 import static org.jsizzle.Invariables.not;
 import static org.jsizzle.Invariables.or;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
 
 import org.junit.Test;
 
@@ -166,6 +171,73 @@ public class InvariablesTest
         assertTrue(elementsEqual(bad.getViolations(), or(asList(bad, bad)).getViolations()));
     }
     
+    @Test
+    public void testAndShortCircuits()
+    {
+        final BindingTest.CountingInvariable first = new BindingTest.CountingInvariable();
+        final BindingTest.CountingInvariable second = new BindingTest.CountingInvariable();
+        assertFalse(and(asList(first, second)).invariant());
+        assertEquals(1, first.invariantCount);
+        assertEquals(0, second.invariantCount);
+    }
+    
+    @Test
+    public void testCompositeVisitsComponentsOnce()
+    {
+        final BindingTest.CountingInvariable component = new BindingTest.CountingInvariable();
+        assertEquals(1, size(or(singleton(component)).getViolations()));
+        assertEquals(1, component.invariantCount);
+        assertEquals(1, component.violationsCount);
+    }
+    
+    @Test
+    public void testCompositeSeesChangedComponents()
+    {
+        final List<Invariable> components = new ArrayList<Invariable>(singleton(good));
+        final Invariable composite = and(components);
+        assertTrue(composite.invariant());
+        assertTrue(isEmpty(composite.getViolations()));
+        components.add(bad);
+        assertFalse(composite.invariant());
+        assertTrue(elementsEqual(bad.getViolations(), composite.getViolations()));
+    }
+    
+    @Test
+    public void testAllHoldAgreesWithAsInvariable()
+    {
+        final List<Object> data = asList(null, new Object(), good, bad,
+                                         asList(good, good), asList(good, bad),
+                                         singleton(bad), new Object[] {good, bad}, new int[] {1},
+                                         singletonMap(good, bad), singletonMap(good, good),
+                                         immutableEntry(bad, good), asList(asList(good), singleton(bad)));
+        for (Object datum : data)
+        {
+            final Invariable invariable = asInvariable(datum);
+            assertEquals(invariable == null || invariable.invariant(), Invariables.allHold(datum));
+        }
+    }
+    
+    @Test
+    public void testParallelComposite()
+    {
+        final List<Invariable> goods = nCopies(5 * CompositeInvariable.PARALLEL_CHUNK_SIZE, good);
+        final List<Invariable> oneBad = new ArrayList<Invariable>(goods);
+        oneBad.set(3 * CompositeInvariable.PARALLEL_CHUNK_SIZE + 1, bad);
+        final ExecutorService executor = newFixedThreadPool(4);
+        try
+        {
+            assertTrue(new CompositeInvariable(goods, true).invariant(executor));
+            assertFalse(new CompositeInvariable(oneBad, true).invariant(executor));
+            assertTrue(new CompositeInvariable(oneBad, false).invariant(executor));
+            assertFalse(new CompositeInvariable(nCopies(goods.size(), bad), false).invariant(executor));
+            assertTrue(elementsEqual(bad.getViolations(), and(oneBad).getViolations()));
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+    
     @Test
     public void testNotFalse()
     {
@@ -0,0 +1,73 @@
+package org.jsizzle;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class InvariantMetricsTest
+{
+    public static final class Measured extends Binding<Measured>
+    {
+        private static final InvariantMetrics $invariantMetrics =
+            InvariantMetrics.register(Measured.class, "positive", "even");
+        
+        public Measured(int value)
+        {
+            if (!InvariantMetrics.record($invariantMetrics, 0, System.nanoTime(), value > 0))
+                addViolation("positive");
+            if (!InvariantMetrics.record($invariantMetrics, 1, System.nanoTime(), value % 2 == 0))
+                addViolation("even");
+        }
+    }
+    
+    @Test
+    public void testRecord()
+    {
+        assertTrue(new Measured(2).invariant());
+        final InvariantMetrics metrics = InvariantMetrics.forSchema(Measured.class);
+        metrics.reset();
+        assertTrue(new Measured(2).invariant());
+        assertFalse(new Measured(3).invariant());
+        assertFalse(new Measured(-3).invariant());
+        
+        final List<InvariantMetrics.Snapshot> snapshot = metrics.getInvariants();
+        assertEquals(2, snapshot.size());
+        assertEquals(Measured.class.getName(), snapshot.get(0).getSchema());
+        assertEquals("positive", snapshot.get(0).getInvariant());
+        assertEquals(3, snapshot.get(0).getEvaluations());
+        assertEquals(1, snapshot.get(0).getFailures());
+        assertEquals("even", snapshot.get(1).getInvariant());
+        assertEquals(3, snapshot.get(1).getEvaluations());
+        assertEquals(2, snapshot.get(1).getFailures());
+        assertTrue(snapshot.get(1).getNanos() >= 0);
+        assertTrue(InvariantMetrics.snapshot().size() >= 2);
+    }
+    
+    @Test
+    public void testRegisterOnce()
+    {
+        new Measured(2);
+        assertSame(InvariantMetrics.forSchema(Measured.class), InvariantMetrics.register(Measured.class, "positive", "even"));
+        assertNull(InvariantMetrics.forSchema(MockBinding.class));
+        assertTrue(InvariantMetrics.record(null, 0, System.nanoTime(), true));
+    }
+    
+    @Test
+    public void testMBean() throws Exception
+    {
+        new Measured(2);
+        final ObjectName name = new ObjectName("org.jsizzle:type=InvariantMetrics,schema="
+                                               + ObjectName.quote(Measured.class.getName()));
+        assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+        assertEquals(2, ((Object[])ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Invariants")).length);
+    }
+}
@@ -0,0 +1,139 @@
+package org.jsizzle;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class PersistentCollectionsTest
+{
+    /**
+     * A key with few distinct hash codes, to force collisions.
+     */
+    private static final class Colliding
+    {
+        private final int value;
+        
+        Colliding(int value)
+        {
+            this.value = value;
+        }
+        
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof Colliding && ((Colliding)o).value == value;
+        }
+        
+        @Override
+        public int hashCode()
+        {
+            return value % 7;
+        }
+    }
+    
+    @Test
+    public void testMapAgreesWithHashMap()
+    {
+        final Random random = new Random(1);
+        final Map<Object, Integer> expected = new HashMap<Object, Integer>();
+        PersistentMap<Object, Integer> actual = PersistentMap.empty();
+        for (int i = 0; i < 20000; i++)
+        {
+            final Object key = random.nextBoolean() ? (Object)random.nextInt(2000) : new Colliding(random.nextInt(100));
+            if (random.nextInt(3) == 0)
+            {
+                expected.remove(key);
+                actual = actual.minus(key);
+            }
+            else
+            {
+                expected.put(key, i);
+                actual = actual.plus(key, i);
+            }
+        }
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected, actual);
+        assertEquals(actual, expected);
+        assertEquals(expected.hashCode(), actual.hashCode());
+        assertEquals(actual, PersistentMap.copyOf(expected));
+        for (Object key : expected.keySet())
+            assertEquals(expected.get(key), actual.get(key));
+    }
+    
+    @Test
+    public void testMapStructuralEquality()
+    {
+        PersistentMap<Integer, String> map = PersistentMap.empty();
+        for (int i = 0; i < 1000; i++)
+            map = map.plus(i, "v" + i);
+        final PersistentMap<Integer, String> changed = map.plus(500, "changed");
+        assertFalse(map.equals(changed));
+        assertEquals(map, changed.plus(500, "v500"));
+        assertEquals(map, map.plus(1000, "new").minus(1000));
+        assertSame(map, map.minus(2000));
+        assertSame(map, PersistentMap.copyOf(map));
+    }
+    
+    @Test
+    public void testSet()
+    {
+        final Set<Integer> expected = new HashSet<Integer>();
+        PersistentSet<Integer> actual = PersistentSet.empty();
+        for (int i = 0; i < 1000; i += 3)
+        {
+            expected.add(i);
+            actual = actual.plus(i);
+        }
+        for (int i = 0; i < 1000; i += 5)
+        {
+            expected.remove(i);
+            actual = actual.minus(i);
+        }
+        assertEquals(expected, actual);
+        assertEquals(actual, expected);
+        assertEquals(expected.hashCode(), actual.hashCode());
+        assertEquals(actual, PersistentSet.copyOf(expected));
+        assertTrue(actual.contains(3));
+        assertFalse(actual.contains(5));
+    }
+    
+    @Test
+    public void testVector()
+    {
+        final List<Integer> expected = new ArrayList<Integer>();
+        PersistentVector<Integer> actual = PersistentVector.empty();
+        for (int i = 0; i < 40000; i++)
+        {
+            expected.add(i);
+            actual = actual.plus(i);
+        }
+        for (int i = 0; i < 40000; i += 37)
+        {
+            expected.set(i, -i);
+            actual = actual.with(i, -i);
+        }
+        assertEquals(expected, actual);
+        assertEquals(actual, expected);
+        assertEquals(expected.hashCode(), actual.hashCode());
+        assertEquals(actual, PersistentVector.copyOf(expected));
+        assertFalse(actual.equals(actual.with(1, 0)));
+        assertEquals(actual, actual.with(1, 0).with(1, 1));
+    }
+    
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutable()
+    {
+        PersistentMap.<String, String>empty().plus("a", "b").put("c", "d");
+    }
+}
@@ -0,0 +1,64 @@
+package org.jsizzle;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SamplingTest
+{
+    @Test
+    public void testAlways()
+    {
+        for (int i = 0; i < 10; i++)
+            assertTrue(Sampling.always.sample(MockBinding.class));
+    }
+
+    @Test
+    public void testNever()
+    {
+        final Sampling never = new Sampling(0);
+        for (int i = 0; i < 10; i++)
+            assertFalse(never.sample(MockBinding.class));
+    }
+
+    @Test
+    public void testRate()
+    {
+        assertEquals(25, sampled(new Sampling(0.25), MockBinding.class, 100));
+    }
+
+    @Test
+    public void testSchemaRate()
+    {
+        final Sampling sampling = new Sampling(0.25).withRate(MockBinding.class, 0.5);
+        assertEquals(50, sampled(sampling, MockBinding.class, 100));
+        assertEquals(25, sampled(sampling, BindingTest.WithDatum.class, 100));
+    }
+
+    @Test
+    public void testWarmUp()
+    {
+        final Sampling sampling = new Sampling(0).withWarmUp(3);
+        assertEquals(3, sampled(sampling, MockBinding.class, 100));
+        assertEquals(3, sampled(sampling, BindingTest.WithDatum.class, 100));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadRate()
+    {
+        new Sampling(1.5);
+    }
+
+    private static int sampled(Sampling sampling, Class<?> schema, int calls)
+    {
+        int sampled = 0;
+        for (int i = 0; i < calls; i++)
+        {
+            if (sampling.sample(schema))
+                sampled++;
+        }
+        return sampled;
+    }
+}
@@ -0,0 +1,51 @@
+package org.jsizzle;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+
+public class SnapshotChainTest
+{
+    private int snapshots = 0;
+
+    private final SnapshotChain<MockBinding> chain = new SnapshotChain<MockBinding>(new Supplier<MockBinding>()
+    {
+        @Override
+        public MockBinding get()
+        {
+            snapshots++;
+            return new MockBinding();
+        }
+    });
+
+    @Test
+    public void testUnchangedIsReused()
+    {
+        final MockBinding before = chain.snapshot();
+        assertSame(before, chain.snapshot());
+        assertEquals(1, snapshots);
+    }
+
+    @Test
+    public void testAfterIsNextBefore()
+    {
+        chain.snapshot();
+        chain.mutated();
+        final MockBinding after = chain.snapshot();
+        assertSame(after, chain.snapshot());
+        assertEquals(2, snapshots);
+    }
+
+    @Test
+    public void testMutation()
+    {
+        final MockBinding before = chain.snapshot();
+        chain.mutated();
+        assertNotSame(before, chain.snapshot());
+        assertEquals(1, chain.getGeneration());
+    }
+}
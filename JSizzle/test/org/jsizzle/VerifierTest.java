@@ -0,0 +1,91 @@
+package org.jsizzle;
+
+import static com.google.common.base.Suppliers.ofInstance;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.jsizzle.InvariablesTest.bad;
+import static org.jsizzle.InvariablesTest.good;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import org.jsizzle.Verifier.Overflow;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+
+public class VerifierTest
+{
+    private final List<Invariable> violated = new CopyOnWriteArrayList<Invariable>();
+    private final List<RuntimeException> failed = new CopyOnWriteArrayList<RuntimeException>();
+    private final Verifier.Sink sink = new Verifier.Sink()
+    {
+        @Override
+        public void violated(Invariable invariable)
+        {
+            violated.add(invariable);
+        }
+        
+        @Override
+        public void failed(RuntimeException e)
+        {
+            failed.add(e);
+        }
+    };
+    
+    @Test
+    public void testViolationsReported() throws InterruptedException
+    {
+        final Verifier verifier = new Verifier(2, 10, Overflow.BLOCK, sink);
+        for (int i = 0; i < 100; i++)
+            assertTrue(verifier.verify(ofInstance(i == 50 ? bad : good)));
+        verifier.verify(new Supplier<Invariable>()
+        {
+            @Override
+            public Invariable get()
+            {
+                throw new NullPointerException();
+            }
+        });
+        verifier.drain();
+        verifier.shutdown();
+        assertEquals(1, violated.size());
+        assertEquals(bad, violated.get(0));
+        assertEquals(1, failed.size());
+        assertEquals(0, verifier.getDropped());
+    }
+    
+    @Test
+    public void testDropWhenFull() throws InterruptedException
+    {
+        final Verifier verifier = new Verifier(1, 1, Overflow.DROP, sink);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        assertTrue(verifier.verify(new Supplier<Invariable>()
+        {
+            @Override
+            public Invariable get()
+            {
+                started.countDown();
+                try
+                {
+                    release.await();
+                }
+                catch (InterruptedException e)
+                {
+                    throw new IllegalStateException(e);
+                }
+                return bad;
+            }
+        }));
+        started.await();
+        assertFalse(verifier.verify(ofInstance(bad)));
+        assertEquals(1, verifier.getDropped());
+        release.countDown();
+        verifier.drain();
+        verifier.shutdown();
+        assertEquals(1, violated.size());
+    }
+}
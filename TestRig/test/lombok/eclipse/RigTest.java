@@ -15,6 +15,7 @@ public class RigTest
     public void testCompile()
     {
         System.setProperty("org.jsizzle.instrument", "true");
+        System.setProperty("org.jsizzle.metrics", "true");
     	final StringWriter errWriter = new StringWriter();
         BatchCompiler.compile(System.getProperty("testrig.path") + " -d none -1.6 -Xemacs",
                               new PrintWriter(System.out),